@@ -0,0 +1,39 @@
+package com.example.bankcards.security;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtTokenProviderBenchmark {
+
+    private JwtTokenProvider jwtTokenProvider;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtTokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(jwtTokenProvider, "jwtSecret",
+                "qwertyuiopasdfghjklzxcvbnmQWERTYUIOPASDFGHJKLZXCVBNMqwertyuiopasdfghjklzxcvbnmQWERTYUIOPASDFGHJ");
+        ReflectionTestUtils.setField(jwtTokenProvider, "jwtExpiration", 3_600_000L);
+        token = jwtTokenProvider.generateJwtToken("dmitrii@gmail.com");
+    }
+
+    @Benchmark
+    public String generate() {
+        return jwtTokenProvider.generateJwtToken("dmitrii@gmail.com");
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return jwtTokenProvider.validateJwtToken(token);
+    }
+
+    @Benchmark
+    public String email() {
+        return jwtTokenProvider.getEmailFromJwtToken(token);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardNumberHash;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CardNumberAllocatorBenchmark {
+
+    private CardNumberAllocator allocator;
+
+    @Setup
+    public void setUp() {
+        CardRepository cardRepository = Mockito.mock(CardRepository.class);
+        Mockito.when(cardRepository.findExistingNumberHashes(ArgumentMatchers.anyCollection())).thenReturn(List.of());
+
+        allocator = new CardNumberAllocator(
+                cardRepository,
+                new CardNumberHash("abcdefghijklmnopqrstuvwxyz123456", 0),
+                List.of("220000-220099"),
+                10000
+        );
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CardNumberAllocator.AllocatedNumber allocate() {
+        return allocator.allocate();
+    }
+}
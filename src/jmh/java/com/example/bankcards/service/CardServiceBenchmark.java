@@ -0,0 +1,101 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.response.card.CardResponse;
+import com.example.bankcards.entity.card.Card;
+import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardKeyRing;
+import com.example.bankcards.util.CardNumberHash;
+import com.example.bankcards.util.EncryptCard;
+import com.example.bankcards.util.Money;
+import com.example.bankcards.util.NumberGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CardServiceBenchmark {
+
+    @Param("10000")
+    private int pageSize;
+
+    @Param({"false", "true"})
+    private boolean lastFourStored;
+
+    @Param({"0", "1000"})
+    private int parallelThreshold;
+
+    private CardService cardService;
+    private Pageable pageable;
+
+    @Setup
+    public void setUp() {
+        EncryptCard encryptCard = new EncryptCard(new CardKeyRing(Map.of(1, "12345678901234567890123456789012"), 1), 0);
+        User user = User.builder().id(1L).firstName("Dmitrii").secondName("Dmitrii").email("dmitrii@gmail.com").build();
+
+        List<Card> cards = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            String number = NumberGenerator.generateNumber();
+            cards.add(Card.builder()
+                    .id((long) i)
+                    .user(user)
+                    .number(encryptCard.encrypt(number))
+                    .lastFour(lastFourStored ? number.substring(number.length() - 4) : null)
+                    .expirationDate(LocalDate.now().plusYears(1))
+                    .status(CardStatus.ACTIVE)
+                    .balance(Money.ofMajor(1000))
+                    .build());
+        }
+
+        pageable = PageRequest.of(0, pageSize);
+        Page<Card> page = new PageImpl<>(cards, pageable, pageSize);
+
+        CardRepository cardRepository = Mockito.mock(CardRepository.class);
+        Mockito.when(cardRepository.findAll(pageable)).thenReturn(page);
+
+        cardService = new CardService(
+                cardRepository,
+                Mockito.mock(UserService.class),
+                new DataKeyService(
+                        Mockito.mock(UserRepository.class),
+                        cardRepository,
+                        encryptCard,
+                        new SimpleMeterRegistry(),
+                        10000,
+                        Duration.ofMinutes(10),
+                        parallelThreshold,
+                        0
+                ),
+                new CardNumberHash("abcdefghijklmnopqrstuvwxyz123456", 0),
+                Mockito.mock(CardNumberAllocator.class),
+                Mockito.mock(TransferService.class),
+                Mockito.mock(LedgerService.class),
+                Mockito.mock(IdempotencyService.class),
+                Mockito.mock(RecipientResolver.class),
+                Mockito.mock(OutboxService.class),
+                Mockito.mock(CardBalanceCache.class),
+                Mockito.mock(TransactionTemplate.class)
+        );
+    }
+
+    @Benchmark
+    public Page<CardResponse> findAllCards() {
+        return cardService.findAllCards(pageable);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.entity.card.Card;
+import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Без БД: коммит моделируется задержкой, блокировка строки - блокировкой в памяти на время транзакции.
+// Сравнивает синхронный ATOMIC, где каждый перевод платит за свой коммит, с групповым коммитом SHARDED
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransferPipelineBenchmark {
+
+    private static final String EMAIL = "dmitrii@gmail.com";
+
+    @Param({"ATOMIC", "SHARDED"})
+    private TransferMode mode;
+
+    @Param("1000")
+    private long commitLatencyMicros;
+
+    @Param("4")
+    private int hotCards;
+
+    private TransferService transferService;
+
+    @Setup
+    public void setUp() {
+        User user = User.builder().id(1L).email(EMAIL).build();
+
+        UserService userService = Mockito.mock(UserService.class, Mockito.withSettings().stubOnly());
+        Mockito.when(userService.findByEmail(EMAIL)).thenReturn(user);
+
+        CardRepository cardRepository = Mockito.mock(CardRepository.class, Mockito.withSettings().stubOnly());
+        Mockito.when(cardRepository.debit(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenReturn(1);
+        Mockito.when(cardRepository.credit(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenReturn(1);
+        Mockito.when(cardRepository.findAllByIdForUpdate(ArgumentMatchers.any())).thenAnswer(inv -> inv.<Collection<Long>>getArgument(0)
+                .stream()
+                .map(id -> Card.builder().id(id).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(1_000_000_000)).build())
+                .toList());
+
+        LedgerService ledgerService = Mockito.mock(LedgerService.class, Mockito.withSettings().stubOnly());
+        Mockito.when(ledgerService.recordTransfer(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenAnswer(inv -> UUID.randomUUID());
+        Mockito.when(ledgerService.recordTransfers(ArgumentMatchers.any())).thenAnswer(inv -> inv.<List<?>>getArgument(0)
+                .stream()
+                .map(transfer -> UUID.randomUUID())
+                .toList());
+
+        transferService = new TransferService(
+                cardRepository,
+                userService,
+                ledgerService,
+                Mockito.mock(IdempotencyService.class, Mockito.withSettings().stubOnly()),
+                new CardLockManager(new SimpleMeterRegistry(), true, 64, Duration.ofSeconds(30)),
+                Mockito.mock(VelocityLimiter.class, Mockito.withSettings().stubOnly()),
+                new SimulatedCommitTemplate(TimeUnit.MICROSECONDS.toNanos(commitLatencyMicros)),
+                new TransferProperties(mode, Duration.ofSeconds(2), 5, Duration.ofMillis(5), Duration.ofMillis(100),
+                        new TransferProperties.Sharding(8, 4096, 256)),
+                new SimpleMeterRegistry()
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        transferService.shutdown();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public UUID transferHotCards() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = random.nextInt(hotCards) + 1;
+        long to = hotCards + random.nextInt(100) + 1;
+        return transferService.transfer(EMAIL, new CardTransferRequest(from, to, BigDecimal.ONE));
+    }
+
+    private static class SimulatedCommitTemplate extends TransactionTemplate {
+
+        private final long commitNanos;
+
+        private SimulatedCommitTemplate(long commitNanos) {
+            this.commitNanos = commitNanos;
+        }
+
+        @Override
+        public <T> T execute(TransactionCallback<T> action) {
+            T result = action.doInTransaction(null);
+            LockSupport.parkNanos(commitNanos);
+            return result;
+        }
+    }
+}
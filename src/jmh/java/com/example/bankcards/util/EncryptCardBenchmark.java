@@ -0,0 +1,56 @@
+package com.example.bankcards.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EncryptCardBenchmark {
+
+    @Param("10000")
+    private int pageSize;
+
+    private EncryptCard encryptCard;
+    private List<String> numbers;
+    private List<byte[]> encrypted;
+
+    @Setup
+    public void setUp() {
+        encryptCard = new EncryptCard(new CardKeyRing(Map.of(1, "12345678901234567890123456789012"), 1), 0);
+        numbers = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            numbers.add(NumberGenerator.generateNumber());
+        }
+        encrypted = encryptCard.encryptAll(numbers);
+    }
+
+    @Benchmark
+    public void decryptPerRow(Blackhole blackhole) {
+        for (byte[] value : encrypted) {
+            blackhole.consume(encryptCard.decrypt(value));
+        }
+    }
+
+    @Benchmark
+    public List<String> decryptAll() {
+        return encryptCard.decryptAll(encrypted);
+    }
+
+    @Benchmark
+    public void encryptPerRow(Blackhole blackhole) {
+        for (String number : numbers) {
+            blackhole.consume(encryptCard.encrypt(number));
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> encryptAll() {
+        return encryptCard.encryptAll(numbers);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.bankcards.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoneyBenchmark {
+
+    private BigDecimal fromDecimal;
+    private BigDecimal toDecimal;
+    private BigDecimal amountDecimal;
+
+    private Money from;
+    private Money to;
+    private Money amount;
+
+    @Setup
+    public void setUp() {
+        fromDecimal = new BigDecimal("1000000.00");
+        toDecimal = new BigDecimal("250.50");
+        amountDecimal = new BigDecimal("12.34");
+        from = Money.of(fromDecimal);
+        to = Money.of(toDecimal);
+        amount = Money.of(amountDecimal);
+    }
+
+    // Проверка и перенос суммы между двумя балансами, как в TransferService.move
+    @Benchmark
+    public BigDecimal transferBigDecimal() {
+        if (fromDecimal.compareTo(amountDecimal) < 0) {
+            throw new IllegalStateException();
+        }
+        return fromDecimal.subtract(amountDecimal).add(toDecimal.add(amountDecimal));
+    }
+
+    @Benchmark
+    public Money transferMoney() {
+        if (from.isLessThan(amount)) {
+            throw new IllegalStateException();
+        }
+        return from.minus(amount).plus(to.plus(amount));
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.bankcards.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NumberGeneratorBenchmark {
+
+    private String number;
+
+    @Setup
+    public void setUp() {
+        number = NumberGenerator.generateNumber("220012");
+    }
+
+    @Benchmark
+    public String generateNumber() {
+        return NumberGenerator.generateNumber();
+    }
+
+    @Benchmark
+    public String generateNumberWithBin() {
+        return NumberGenerator.generateNumber("220012");
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return NumberGenerator.isValid(number);
+    }
+}
@@ -3,6 +3,7 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.request.user.UserUpdateRequest;
 import com.example.bankcards.dto.response.user.UserResponse;
+import com.example.bankcards.service.DataKeyService;
 import com.example.bankcards.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -25,6 +26,7 @@ import org.springframework.web.bind.annotation.*;
 public class AdminController {
 
     private final UserService userService;
+    private final DataKeyService dataKeyService;
 
     @Operation(
             summary = "Получение всех пользователей",
@@ -110,4 +112,22 @@ public class AdminController {
         userService.deleteUser(id);
         return ResponseEntity.ok().build();
     }
+
+    @Operation(
+            summary = "Ротация ключа шифрования пользователя",
+            description = "Создает новый ключ пользователя и перешифровывает его карты"
+    )
+    @ApiResponse(responseCode = "200",
+            description = "Ключ заменен")
+    @ApiResponse(responseCode = "404",
+            description = "Пользователь не найден",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @PostMapping("/{id}/rotate_key")
+    public ResponseEntity<Void> rotateDataKey(@PathVariable Long id) {
+        dataKeyService.rotate(id);
+        return ResponseEntity.ok().build();
+    }
 }
@@ -2,6 +2,7 @@ package com.example.bankcards.controller;
 
 
 import com.example.bankcards.dto.request.card.CardCreateRequest;
+import com.example.bankcards.dto.request.card.CardNumberRequest;
 import com.example.bankcards.dto.response.block.BlockResponse;
 import com.example.bankcards.dto.response.card.CardResponse;
 import com.example.bankcards.entity.card.CardStatus;
@@ -46,6 +47,28 @@ public class CardAdminController {
         return ResponseEntity.ok(page);
     }
 
+    @Operation(
+            summary = "Поиск карты по номеру",
+            description = "Возвращает карту по полному номеру"
+    )
+    @ApiResponse(responseCode = "200",
+            description = "Карта найдена",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = CardResponse.class)
+            ))
+    @ApiResponse(responseCode = "404",
+            description = "Карта не найдена",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @PostMapping("/search")
+    public ResponseEntity<CardResponse> findCardByNumber(
+            @Valid @RequestBody CardNumberRequest cardNumberRequest) {
+        return ResponseEntity.ok(cardService.findCardByNumber(cardNumberRequest.number()));
+    }
+
     @Operation(
             summary = "Все запросы на блокировку",
             description = "Возвращает все запросы на блокировку карт"
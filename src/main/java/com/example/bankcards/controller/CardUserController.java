@@ -1,17 +1,31 @@
 package com.example.bankcards.controller;
 
 
+import com.example.bankcards.dto.request.card.CardBatchTransferRequest;
+import com.example.bankcards.dto.request.card.CardNumberTransferRequest;
 import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.request.card.StandingOrderRequest;
 import com.example.bankcards.dto.response.block.BlockResponse;
+import com.example.bankcards.dto.response.card.BatchTransferResponse;
 import com.example.bankcards.dto.response.card.CardResponse;
+import com.example.bankcards.dto.response.card.StandingOrderResponse;
+import com.example.bankcards.dto.response.card.TransactionPageResponse;
+import com.example.bankcards.dto.response.card.TransferOrderResponse;
+import com.example.bankcards.dto.response.card.TransferResponse;
 import com.example.bankcards.service.CardService;
 import com.example.bankcards.service.RequestBlockService;
+import com.example.bankcards.service.StandingOrderService;
+import com.example.bankcards.service.TransferQueueService;
+import com.example.bankcards.service.TransferResult;
+import com.example.bankcards.util.Money;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import lombok.AllArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -20,8 +34,10 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("api/v1/cards")
@@ -32,6 +48,8 @@ public class CardUserController {
 
     private final CardService cardService;
     private final RequestBlockService requestBlockService;
+    private final TransferQueueService transferQueueService;
+    private final StandingOrderService standingOrderService;
 
     @Operation(
             summary = "Получение карт",
@@ -89,7 +107,7 @@ public class CardUserController {
             description = "Баланс карты получена",
             content = @Content(
                     mediaType = "application/json",
-                    schema = @Schema(implementation = BigDecimal.class)
+                    schema = @Schema(implementation = Money.class)
             ))
     @ApiResponse(responseCode = "400",
             description = "Карта не принадлежит пользователю",
@@ -104,13 +122,46 @@ public class CardUserController {
                     schema = @Schema(type = "string")
             ))
     @GetMapping("/{id}/balance")
-    public ResponseEntity<BigDecimal> getCardBalance(
+    public ResponseEntity<Money> getCardBalance(
             @AuthenticationPrincipal UserDetails userDetails,
             @PathVariable Long id
     )  {
         return ResponseEntity.ok(cardService.findCardBalance(userDetails.getUsername(), id));
     }
 
+    @Operation(
+            summary = "История операций по карте",
+            description = "Возвращает операции по карте текущего пользователя, новые первыми. "
+                    + "Для следующей страницы передайте nextCursor из ответа в параметре cursor"
+    )
+    @ApiResponse(responseCode = "200",
+            description = "Операции получены",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = TransactionPageResponse.class)
+            ))
+    @ApiResponse(responseCode = "400",
+            description = "Карта не принадлежит пользователю или некорректный курсор",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @ApiResponse(responseCode = "404",
+            description = "Карта не найдена",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @GetMapping("/{id}/transactions")
+    public ResponseEntity<TransactionPageResponse> getTransactions(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") @Min(1) @Max(200) int size
+    ) {
+        return ResponseEntity.ok(cardService.findTransactions(userDetails.getUsername(), id, cursor, size));
+    }
+
     @Operation(
             summary = "Получение запросов на блокировку",
             description = "Возвращает все запросы на блокировку текущего пользователя"
@@ -171,7 +222,12 @@ public class CardUserController {
             description = "Переводит деньги между картами текущего пользователя"
     )
     @ApiResponse(responseCode = "200",
-            description = "Перевод выполнен")
+            description = "Перевод выполнен. При повторе с тем же Idempotency-Key возвращается сохраненный результат"
+                    + " и заголовок Idempotent-Replayed",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = TransferResponse.class)
+            ))
     @ApiResponse(responseCode = "400",
             description = "Ошибка при работе с картой",
             content = @Content(
@@ -185,11 +241,215 @@ public class CardUserController {
                     schema = @Schema(type = "string")
             ))
     @PostMapping("/transfer")
-    public ResponseEntity<Void> transfer(
+    public ResponseEntity<TransferResponse> transfer(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey,
+            @Valid @RequestBody CardTransferRequest request
+    ) {
+        TransferResult result = cardService.transferMoney(userDetails.getUsername(), request, idempotencyKey);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (result.replayed()) {
+            response.header("Idempotent-Replayed", "true");
+        }
+        return response.body(new TransferResponse(result.operationId()));
+    }
+
+    @Operation(
+            summary = "Перевод на карту другого клиента",
+            description = "Переводит деньги с карты текущего пользователя на карту по ее номеру. "
+                    + "Поддерживает заголовок Idempotency-Key так же, как перевод между своими картами"
+    )
+    @ApiResponse(responseCode = "200",
+            description = "Перевод выполнен",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = TransferResponse.class)
+            ))
+    @ApiResponse(responseCode = "400",
+            description = "Ошибка при работе с картой",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @ApiResponse(responseCode = "404",
+            description = "Карта получателя не найдена",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @PostMapping("/transfer/by_number")
+    public ResponseEntity<TransferResponse> transferByNumber(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey,
+            @Valid @RequestBody CardNumberTransferRequest request
+    ) {
+        TransferResult result = cardService.transferToCustomer(userDetails.getUsername(), request, idempotencyKey);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (result.replayed()) {
+            response.header("Idempotent-Replayed", "true");
+        }
+        return response.body(new TransferResponse(result.operationId()));
+    }
+
+    @Operation(
+            summary = "Пакетный перевод между картами",
+            description = "Выполняет несколько переводов между картами текущего пользователя в одной транзакции. "
+                    + "В режиме ALL_OR_NOTHING любой отклоненный перевод отменяет весь пакет, "
+                    + "в режиме PER_ITEM отклоненные переводы пропускаются"
+    )
+    @ApiResponse(responseCode = "200",
+            description = "Пакет обработан, результат по каждому переводу",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = BatchTransferResponse.class)
+            ))
+    @ApiResponse(responseCode = "400",
+            description = "Ошибка при работе с картой",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @PostMapping("/transfers/batch")
+    public ResponseEntity<BatchTransferResponse> transferBatch(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @Valid @RequestBody CardBatchTransferRequest request
+    ) {
+        return ResponseEntity.ok(cardService.transferBatch(userDetails.getUsername(), request));
+    }
+
+    @Operation(
+            summary = "Асинхронный перевод между картами",
+            description = "Проверяет параметры, ставит перевод в очередь и сразу возвращает его ID. "
+                    + "Перевод выполняется фоновым обработчиком, статус доступен по ссылке из заголовка Location"
+    )
+    @ApiResponse(responseCode = "202",
+            description = "Перевод принят в обработку",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = TransferOrderResponse.class)
+            ))
+    @ApiResponse(responseCode = "400",
+            description = "Некорректные параметры перевода",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @PostMapping("/transfers")
+    public ResponseEntity<TransferOrderResponse> submitTransfer(
             @AuthenticationPrincipal UserDetails userDetails,
             @Valid @RequestBody CardTransferRequest request
     ) {
-        cardService.transferMoney(userDetails.getUsername(), request);
-        return ResponseEntity.ok().build();
+        TransferOrderResponse order = transferQueueService.submit(userDetails.getUsername(), request);
+        return ResponseEntity
+                .accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(order.id()).toUri())
+                .body(order);
+    }
+
+    @Operation(
+            summary = "Статус асинхронного перевода",
+            description = "Возвращает статус перевода из очереди. С параметром wait ждет завершения перевода "
+                    + "не дольше указанного числа секунд"
+    )
+    @ApiResponse(responseCode = "200",
+            description = "Статус получен",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = TransferOrderResponse.class)
+            ))
+    @ApiResponse(responseCode = "404",
+            description = "Перевод не найден",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @GetMapping("/transfers/{id}")
+    public ResponseEntity<TransferOrderResponse> getTransfer(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable UUID id,
+            @RequestParam(defaultValue = "0") @Min(0) @Max(30) int wait
+    ) {
+        return ResponseEntity.ok(transferQueueService.findOrder(userDetails.getUsername(), id, Duration.ofSeconds(wait)));
+    }
+
+    @Operation(
+            summary = "Создание регулярного перевода",
+            description = "Создает разовый перевод на будущую дату или регулярный перевод между картами текущего пользователя. "
+                    + "Переводы выполняются планировщиком по правилам обычного перевода, "
+                    + "при одновременном наступлении первыми выполняются переводы с большим приоритетом (0-9)"
+    )
+    @ApiResponse(responseCode = "200",
+            description = "Регулярный перевод создан",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = StandingOrderResponse.class)
+            ))
+    @ApiResponse(responseCode = "400",
+            description = "Некорректные параметры перевода или карта не принадлежит пользователю",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @ApiResponse(responseCode = "404",
+            description = "Карта не найдена",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @PostMapping("/standing_orders")
+    public ResponseEntity<StandingOrderResponse> createStandingOrder(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @Valid @RequestBody StandingOrderRequest request
+    ) {
+        return ResponseEntity.ok(standingOrderService.create(userDetails.getUsername(), request));
+    }
+
+    @Operation(
+            summary = "Получение регулярных переводов",
+            description = "Возвращает регулярные переводы текущего пользователя с датой следующего исполнения "
+                    + "и результатом последнего"
+    )
+    @ApiResponse(responseCode = "200",
+            description = "Регулярные переводы получены",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = StandingOrderResponse.class)
+            ))
+    @GetMapping("/standing_orders")
+    public ResponseEntity<Page<StandingOrderResponse>> getStandingOrders(
+            @AuthenticationPrincipal UserDetails userDetails,
+            Pageable pageable
+    ) {
+        return ResponseEntity.ok(standingOrderService.findOrders(userDetails.getUsername(), pageable));
+    }
+
+    @Operation(
+            summary = "Отмена регулярного перевода",
+            description = "Отменяет регулярный перевод текущего пользователя, уже выполненные переводы не отменяются"
+    )
+    @ApiResponse(responseCode = "200",
+            description = "Регулярный перевод отменен",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = StandingOrderResponse.class)
+            ))
+    @ApiResponse(responseCode = "400",
+            description = "Регулярный перевод уже завершен",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @ApiResponse(responseCode = "404",
+            description = "Регулярный перевод не найден",
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(type = "string")
+            ))
+    @DeleteMapping("/standing_orders/{id}")
+    public ResponseEntity<StandingOrderResponse> cancelStandingOrder(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long id
+    ) {
+        return ResponseEntity.ok(standingOrderService.cancel(userDetails.getUsername(), id));
     }
 }
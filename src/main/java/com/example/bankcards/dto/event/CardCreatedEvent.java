@@ -0,0 +1,15 @@
+package com.example.bankcards.dto.event;
+
+import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.util.Money;
+
+import java.time.LocalDate;
+
+public record CardCreatedEvent(
+        Long cardId,
+        Long userId,
+        String lastFour,
+        LocalDate expirationDate,
+        CardStatus status,
+        Money balance
+) implements CardEvent {}
@@ -0,0 +1,7 @@
+package com.example.bankcards.dto.event;
+
+public interface CardEvent {
+
+    Long cardId();
+
+}
@@ -0,0 +1,10 @@
+package com.example.bankcards.dto.event;
+
+import com.example.bankcards.entity.card.CardStatus;
+
+public record CardStatusChangedEvent(
+        Long cardId,
+        Long userId,
+        CardStatus previousStatus,
+        CardStatus status
+) implements CardEvent {}
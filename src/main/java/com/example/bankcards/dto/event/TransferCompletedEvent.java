@@ -0,0 +1,17 @@
+package com.example.bankcards.dto.event;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+public record TransferCompletedEvent(
+        UUID operationId,
+        Long fromCardId,
+        Long toCardId,
+        BigDecimal amount
+) implements CardEvent {
+
+    @Override
+    public Long cardId() {
+        return fromCardId;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.bankcards.dto.request.card;
+
+import com.example.bankcards.service.BatchTransferMode;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record CardBatchTransferRequest(
+
+        @NotEmpty(message = "Список переводов не может быть пустым")
+        @Size(max = 1000, message = "В пакете не более 1000 переводов")
+        List<@Valid @NotNull(message = "Перевод не может быть пустым") CardTransferRequest> transfers,
+
+        // По умолчанию ALL_OR_NOTHING
+        BatchTransferMode mode
+) {
+}
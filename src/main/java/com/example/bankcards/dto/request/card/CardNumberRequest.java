@@ -0,0 +1,11 @@
+package com.example.bankcards.dto.request.card;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+
+public record CardNumberRequest(
+
+        @NotBlank(message = "Номер карты не может быть пустым")
+        @Pattern(regexp = "^(\\d{4} ?){3}\\d{4}$", message = "Неверный формат номера карты. Ожидается 16 цифр")
+        String number
+) {}
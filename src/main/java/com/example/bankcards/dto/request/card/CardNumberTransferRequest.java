@@ -0,0 +1,21 @@
+package com.example.bankcards.dto.request.card;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+
+import java.math.BigDecimal;
+
+public record CardNumberTransferRequest(
+
+        @NotNull(message = "ID карты отправителя не может быть пустым")
+        Long fromCardId,
+
+        @NotBlank(message = "Номер карты получателя не может быть пустым")
+        @Pattern(regexp = "^(\\d{4} ?){3}\\d{4}$", message = "Неверный формат номера карты. Ожидается 16 цифр")
+        String toCardNumber,
+
+        @NotNull(message = "Amount не может быть пустым")
+        BigDecimal amount
+) {
+}
@@ -0,0 +1,32 @@
+package com.example.bankcards.dto.request.card;
+
+import com.example.bankcards.entity.standing.StandingOrderPeriod;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record StandingOrderRequest(
+
+        @NotNull(message = "ID карты отправителя не может быть пустым")
+        Long fromCardId,
+
+        @NotNull(message = "ID карты получателя не может быть пустым")
+        Long toCardId,
+
+        @NotNull(message = "Amount не может быть пустым")
+        BigDecimal amount,
+
+        @NotNull(message = "Дата первого перевода не может быть пустой")
+        LocalDateTime startAt,
+
+        @NotNull(message = "Периодичность не может быть пустой")
+        StandingOrderPeriod period,
+
+        @Min(value = 0, message = "Приоритет должен быть от 0 до 9")
+        @Max(value = 9, message = "Приоритет должен быть от 0 до 9")
+        Integer priority
+) {
+}
@@ -0,0 +1,12 @@
+package com.example.bankcards.dto.response.card;
+
+import com.example.bankcards.service.BatchItemStatus;
+
+import java.util.UUID;
+
+public record BatchTransferItemResponse(
+        int index,
+        BatchItemStatus status,
+        UUID operationId,
+        String error
+) {}
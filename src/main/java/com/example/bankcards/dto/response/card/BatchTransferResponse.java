@@ -0,0 +1,9 @@
+package com.example.bankcards.dto.response.card;
+
+import java.util.List;
+
+public record BatchTransferResponse(
+        int completed,
+        int rejected,
+        List<BatchTransferItemResponse> items
+) {}
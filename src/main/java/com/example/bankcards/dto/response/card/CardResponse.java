@@ -1,8 +1,8 @@
 package com.example.bankcards.dto.response.card;
 
 import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.util.Money;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 
 public record CardResponse (
@@ -12,5 +12,5 @@ public record CardResponse (
         String secondName,
         LocalDate expirationDate,
         CardStatus status,
-        BigDecimal balance
+        Money balance
 ) {}
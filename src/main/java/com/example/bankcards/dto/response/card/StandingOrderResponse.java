@@ -0,0 +1,23 @@
+package com.example.bankcards.dto.response.card;
+
+import com.example.bankcards.entity.standing.StandingOrderPeriod;
+import com.example.bankcards.entity.standing.StandingOrderStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record StandingOrderResponse(
+        Long id,
+        StandingOrderStatus status,
+        Long fromCardId,
+        Long toCardId,
+        BigDecimal amount,
+        StandingOrderPeriod period,
+        int priority,
+        LocalDateTime nextRunAt,
+        LocalDateTime lastRunAt,
+        UUID lastOperationId,
+        String lastError,
+        LocalDateTime createdAt
+) {}
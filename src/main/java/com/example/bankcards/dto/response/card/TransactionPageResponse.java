@@ -0,0 +1,9 @@
+package com.example.bankcards.dto.response.card;
+
+import java.util.List;
+
+// nextCursor передается в следующий запрос, null - записей больше нет
+public record TransactionPageResponse(
+        List<TransactionResponse> items,
+        String nextCursor
+) {}
@@ -0,0 +1,17 @@
+package com.example.bankcards.dto.response.card;
+
+import com.example.bankcards.entity.ledger.EntryType;
+import com.example.bankcards.entity.ledger.LedgerOperation;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record TransactionResponse(
+        Long id,
+        UUID operationId,
+        LedgerOperation operation,
+        EntryType type,
+        BigDecimal amount,
+        LocalDateTime createdAt
+) {}
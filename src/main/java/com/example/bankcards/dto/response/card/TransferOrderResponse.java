@@ -0,0 +1,19 @@
+package com.example.bankcards.dto.response.card;
+
+import com.example.bankcards.entity.transfer.TransferOrderStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record TransferOrderResponse(
+        UUID id,
+        TransferOrderStatus status,
+        Long fromCardId,
+        Long toCardId,
+        BigDecimal amount,
+        UUID operationId,
+        String error,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt
+) {}
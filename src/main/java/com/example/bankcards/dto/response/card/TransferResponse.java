@@ -0,0 +1,7 @@
+package com.example.bankcards.dto.response.card;
+
+import java.util.UUID;
+
+public record TransferResponse(
+        UUID operationId
+) {}
@@ -3,10 +3,10 @@ package com.example.bankcards.entity.card;
 
 import com.example.bankcards.entity.request.RequestBlock;
 import com.example.bankcards.entity.user.User;
+import com.example.bankcards.util.Money;
 import jakarta.persistence.*;
 import lombok.*;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,8 +24,14 @@ public class Card {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true)
-    private String number;
+    @Column(nullable = false)
+    private byte[] number;
+
+    @Column(name = "number_hash", unique = true)
+    private String numberHash;
+
+    @Column(name = "last_four", length = 4)
+    private String lastFour;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
@@ -39,7 +45,10 @@ public class Card {
     private CardStatus status;
 
     @Column(nullable = false)
-    private BigDecimal balance;
+    private Money balance;
+
+    @Version
+    private Long version;
 
     @OneToMany(
             mappedBy = "card",
@@ -0,0 +1,37 @@
+package com.example.bankcards.entity.idempotency;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "idempotency_keys")
+public class IdempotencyKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false, name = "idempotency_key")
+    private String key;
+
+    // SHA-256 тела запроса: повтор ключа с другими параметрами отклоняется
+    @Column(nullable = false, name = "request_hash")
+    private String requestHash;
+
+    @Column(name = "operation_id")
+    private UUID operationId;
+
+    @Column(nullable = false, name = "created_at")
+    private LocalDateTime createdAt;
+
+}
@@ -0,0 +1,45 @@
+package com.example.bankcards.entity.ledger;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "ledger_entries")
+public class LedgerEntry {
+
+    // Последовательность с шагом 50 вместо IDENTITY, иначе Hibernate не сможет отправлять вставки пакетами
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ledger_entries_seq")
+    @SequenceGenerator(name = "ledger_entries_seq", sequenceName = "ledger_entries_id_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, name = "operation_id")
+    private UUID operationId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private LedgerOperation operation;
+
+    // Без внешнего ключа: записи журнала переживают удаление карты
+    @Column(nullable = false, name = "card_id")
+    private Long cardId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private EntryType type;
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+
+    @Column(nullable = false, name = "created_at")
+    private LocalDateTime createdAt;
+
+}
@@ -0,0 +1,35 @@
+package com.example.bankcards.entity.outbox;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "outbox_events")
+public class OutboxEvent {
+
+    // Порядок ID - порядок вставки: события одной карты пишутся под ее блокировкой и доставляются в том же порядке
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, name = "event_type")
+    private OutboxEventType eventType;
+
+    @Column(nullable = false, name = "aggregate_id")
+    private Long aggregateId;
+
+    // JSON события, сериализуется при записи и передается получателю без разбора
+    @Column(nullable = false, length = 4000)
+    private String payload;
+
+    @Column(nullable = false, name = "created_at")
+    private LocalDateTime createdAt;
+
+}
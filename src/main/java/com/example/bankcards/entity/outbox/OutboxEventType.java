@@ -0,0 +1,7 @@
+package com.example.bankcards.entity.outbox;
+
+public enum OutboxEventType {
+
+    CARD_CREATED, CARD_STATUS_CHANGED, TRANSFER_COMPLETED
+
+}
@@ -0,0 +1,76 @@
+package com.example.bankcards.entity.standing;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "standing_orders")
+public class StandingOrder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false, name = "from_card_id")
+    private Long fromCardId;
+
+    @Column(nullable = false, name = "to_card_id")
+    private Long toCardId;
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private StandingOrderPeriod period;
+
+    // Среди наступивших переводов планировщик первыми забирает переводы с большим приоритетом
+    @Column(nullable = false)
+    private int priority;
+
+    @Column(nullable = false, name = "start_at")
+    private LocalDateTime startAt;
+
+    @Column(name = "next_run_at")
+    private LocalDateTime nextRunAt;
+
+    // Номер следующего исполнения: входит в ключ идемпотентности, повтор того же исполнения не спишет деньги дважды
+    @Column(nullable = false)
+    private int runs;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private StandingOrderStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    // Аренда планировщика или время повтора после временной ошибки
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "last_run_at")
+    private LocalDateTime lastRunAt;
+
+    @Column(name = "last_operation_id")
+    private UUID lastOperationId;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(nullable = false, name = "created_at")
+    private LocalDateTime createdAt;
+
+}
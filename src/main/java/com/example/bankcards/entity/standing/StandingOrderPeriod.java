@@ -0,0 +1,19 @@
+package com.example.bankcards.entity.standing;
+
+import java.time.LocalDateTime;
+
+public enum StandingOrderPeriod {
+
+    ONCE, DAILY, WEEKLY, MONTHLY;
+
+    // Время n-го исполнения считается от даты начала: перевод на 31-е число в коротком месяце уходит в последний день,
+    // а в следующем месяце снова 31-го
+    public LocalDateTime occurrence(LocalDateTime startAt, int n) {
+        return switch (this) {
+            case ONCE -> n == 0 ? startAt : null;
+            case DAILY -> startAt.plusDays(n);
+            case WEEKLY -> startAt.plusWeeks(n);
+            case MONTHLY -> startAt.plusMonths(n);
+        };
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.bankcards.entity.standing;
+
+public enum StandingOrderStatus {
+
+    ACTIVE, COMPLETED, FAILED, CANCELLED
+
+}
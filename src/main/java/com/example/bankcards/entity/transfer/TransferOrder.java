@@ -0,0 +1,57 @@
+package com.example.bankcards.entity.transfer;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "transfer_orders")
+public class TransferOrder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(nullable = false, name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false, name = "from_card_id")
+    private Long fromCardId;
+
+    @Column(nullable = false, name = "to_card_id")
+    private Long toCardId;
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private TransferOrderStatus status;
+
+    @Column(name = "operation_id")
+    private UUID operationId;
+
+    private String error;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    // Аренда воркера: перевод, не завершенный к этому времени, снова забирается из очереди
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(nullable = false, name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false, name = "updated_at")
+    private LocalDateTime updatedAt;
+
+}
@@ -0,0 +1,7 @@
+package com.example.bankcards.entity.transfer;
+
+public enum TransferOrderStatus {
+
+    PENDING, PROCESSING, COMPLETED, REJECTED
+
+}
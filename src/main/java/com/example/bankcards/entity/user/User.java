@@ -41,6 +41,10 @@ public class User {
     @Column(nullable = false)
     private Role role;
 
+    // Меняется только условными UPDATE репозитория: сохранение сущности не вернет устаревший ключ
+    @Column(name = "data_key", updatable = false)
+    private byte[] dataKey;
+
     @OneToMany(
             mappedBy = "user",
             cascade = CascadeType.ALL,
@@ -0,0 +1,7 @@
+package com.example.bankcards.exception;
+
+public class TransferLimitException extends CardOperationException {
+    public TransferLimitException(String message) {
+        super(message);
+    }
+}
@@ -4,6 +4,7 @@ package com.example.bankcards.exception.handler;
 import com.example.bankcards.dto.exception.EncryptErrorMessage;
 import com.example.bankcards.dto.exception.ErrorMessage;
 import com.example.bankcards.exception.*;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -40,6 +41,20 @@ public class ExceptionApiHandler {
                 .body(new ErrorMessage(ex.getMessage()));
     }
 
+    @ExceptionHandler(TransferLimitException.class)
+    public ResponseEntity<ErrorMessage> handleTransferLimitException(TransferLimitException ex) {
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(new ErrorMessage(ex.getMessage()));
+    }
+
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    public ResponseEntity<ErrorMessage> handleConcurrencyFailureException(ConcurrencyFailureException ex) {
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(new ErrorMessage("Карта занята другой операцией, повторите попытку позже"));
+    }
+
     @ExceptionHandler(UserOperationException.class)
     public ResponseEntity<ErrorMessage> handleUserOperationException(UserOperationException ex) {
         return ResponseEntity
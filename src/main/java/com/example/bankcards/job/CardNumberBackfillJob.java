@@ -0,0 +1,128 @@
+package com.example.bankcards.job;
+
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardNumberHash;
+import com.example.bankcards.util.EncryptCard;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+@Slf4j
+@Component
+public class CardNumberBackfillJob {
+
+    private final CardRepository cardRepository;
+    private final EncryptCard encryptCard;
+    private final CardNumberHash cardNumberHash;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int parallelism;
+
+    public CardNumberBackfillJob(CardRepository cardRepository,
+                                 EncryptCard encryptCard,
+                                 CardNumberHash cardNumberHash,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${cards.backfill.enabled:true}") boolean enabled,
+                                 @Value("${cards.backfill.batch-size:500}") int batchSize,
+                                 @Value("${cards.backfill.parallelism:4}") int parallelism) {
+        this.cardRepository = cardRepository;
+        this.encryptCard = encryptCard;
+        this.cardNumberHash = cardNumberHash;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            Thread.ofVirtual().name("card-number-backfill").start(this::run);
+        }
+    }
+
+    public int run() {
+        // Семафор ограничивает число пакетов в работе, а значит и занятых соединений пула
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<Integer>> batches = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long afterId = 0;
+            while (true) {
+                List<Long> ids = cardRepository.findIdsToBackfill(afterId, Limit.of(batchSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+
+                permits.acquireUninterruptibly();
+                batches.add(executor.submit(() -> {
+                    try {
+                        return backfillBatch(ids);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+
+                afterId = ids.get(ids.size() - 1);
+            }
+        }
+
+        int processed = 0;
+        for (Future<Integer> batch : batches) {
+            try {
+                processed += batch.get();
+            } catch (ExecutionException e) {
+                log.error("Ошибка при заполнении данных карт", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        log.info("Заполнение данных номеров карт завершено. Обработано карт: {}", processed);
+        return processed;
+    }
+
+    private int backfillBatch(List<Long> ids) {
+        try {
+            Integer updated = transactionTemplate.execute(status -> backfill(ids));
+            return updated != null ? updated : 0;
+        } catch (DataIntegrityViolationException e) {
+            log.error("Дубликат номера карты среди ID {}..{}, пакет пропущен", ids.get(0), ids.get(ids.size() - 1), e);
+            return 0;
+        }
+    }
+
+    // Пишутся только number_hash и last_four: переводы, выполняемые параллельно, не теряются
+    private int backfill(List<Long> ids) {
+        List<CardRepository.CardNumber> cards = cardRepository.findNumbersByIdIn(ids);
+        List<String> numbers = encryptCard.decryptAll(cards.stream().map(CardRepository.CardNumber::getNumber).toList());
+
+        int updated = 0;
+        for (int i = 0; i < cards.size(); i++) {
+            Long cardId = cards.get(i).getId();
+            String number = numbers.get(i);
+            if (number == null) {
+                log.warn("Не удалось расшифровать номер карты. ID: {}", cardId);
+                continue;
+            }
+
+            updated += cardRepository.updateNumberHash(cardId, cardNumberHash.hash(number), number.substring(number.length() - 4));
+        }
+        return updated;
+    }
+}
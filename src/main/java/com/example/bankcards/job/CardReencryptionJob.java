@@ -0,0 +1,183 @@
+package com.example.bankcards.job;
+
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardKeyRing;
+import com.example.bankcards.util.EncryptCard;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@Component
+public class CardReencryptionJob {
+
+    private final CardRepository cardRepository;
+    private final UserRepository userRepository;
+    private final EncryptCard encryptCard;
+    private final CardKeyRing keyRing;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int rate;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong throughput = new AtomicLong();
+    private final Counter reencrypted;
+    private final Counter failed;
+    private final Timer batchTimer;
+
+    public CardReencryptionJob(CardRepository cardRepository,
+                               UserRepository userRepository,
+                               EncryptCard encryptCard,
+                               CardKeyRing keyRing,
+                               TransactionTemplate transactionTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${encrypt.reencrypt.enabled:false}") boolean enabled,
+                               @Value("${encrypt.reencrypt.batch-size:500}") int batchSize,
+                               @Value("${encrypt.reencrypt.rate:2000}") int rate) {
+        this.cardRepository = cardRepository;
+        this.userRepository = userRepository;
+        this.encryptCard = encryptCard;
+        this.keyRing = keyRing;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.rate = rate;
+
+        this.reencrypted = meterRegistry.counter("cards.reencryption.cards", "result", "success");
+        this.failed = meterRegistry.counter("cards.reencryption.cards", "result", "failure");
+        this.batchTimer = meterRegistry.timer("cards.reencryption.batch");
+        Gauge.builder("cards.reencryption.total", total, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("cards.reencryption.processed", processed, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("cards.reencryption.progress", this, CardReencryptionJob::progress).register(meterRegistry);
+        Gauge.builder("cards.reencryption.throughput", throughput, AtomicLong::get)
+                .baseUnit("cards/s")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            Thread.ofVirtual().name("card-reencryption").start(this::run);
+        }
+    }
+
+    public long run() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        try {
+            int version = keyRing.activeVersion();
+            total.set(cardRepository.countNotEncryptedWith(version));
+            processed.set(0);
+            log.info("Перешифрование карт на ключ версии {}. Карт к обработке: {}", version, total.get());
+
+            long startedAt = System.nanoTime();
+            long afterId = 0;
+            while (true) {
+                List<Long> ids = cardRepository.findIdsNotEncryptedWith(version, afterId, batchSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+
+                batchTimer.record(() -> transactionTemplate.executeWithoutResult(status -> reencrypt(ids)));
+                processed.addAndGet(ids.size());
+                afterId = ids.get(ids.size() - 1);
+
+                long elapsed = System.nanoTime() - startedAt;
+                throughput.set(processed.get() * 1_000_000_000L / Math.max(elapsed, 1));
+                if (!throttle(elapsed)) {
+                    break;
+                }
+            }
+
+            log.info("Перешифрование карт завершено. Обработано карт: {}", processed.get());
+            log.info("Перешифровано ключей пользователей: {}", rewrapDataKeys(version));
+            return processed.get();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public double progress() {
+        long all = total.get();
+        return all == 0 ? 1.0 : Math.min(1.0, (double) processed.get() / all);
+    }
+
+    // Пишется только номер: баланс не перезаписывается, параллельные переводы не теряются и не конфликтуют с заданием
+    private void reencrypt(List<Long> ids) {
+        for (CardRepository.CardNumber card : cardRepository.findNumbersByIdIn(ids)) {
+            try {
+                if (cardRepository.updateNumber(card.getId(), card.getNumber(), encryptCard.reencrypt(card.getNumber())) == 1) {
+                    reencrypted.increment();
+                }
+            } catch (Exception e) {
+                failed.increment();
+                log.warn("Не удалось перешифровать номер карты. ID: {}", card.getId(), e);
+            }
+        }
+    }
+
+    // Номера под ключами пользователей не меняются, мастер-ключом перешифровываются только сами ключи
+    private long rewrapDataKeys(int version) {
+        long rewrapped = 0;
+        long afterId = 0;
+        while (true) {
+            List<Long> ids = userRepository.findIdsWithDataKeyNotWrappedWith(version, afterId, batchSize);
+            if (ids.isEmpty()) {
+                return rewrapped;
+            }
+
+            transactionTemplate.executeWithoutResult(status -> rewrap(ids));
+            rewrapped += ids.size();
+            afterId = ids.get(ids.size() - 1);
+        }
+    }
+
+    // Пишется только data_key с условием на прежнее значение: параллельная ротация ключа не затирается
+    private void rewrap(List<Long> ids) {
+        for (UserRepository.UserDataKey user : userRepository.findDataKeysByIdIn(ids)) {
+            try {
+                userRepository.replaceDataKey(user.getId(), user.getDataKey(), encryptCard.reencrypt(user.getDataKey()));
+            } catch (Exception e) {
+                log.warn("Не удалось перешифровать ключ пользователя. ID: {}", user.getId(), e);
+            }
+        }
+    }
+
+    // Выдерживает заданную скорость: ждет, пока фактическое время не догонит расчетное для обработанных карт
+    private boolean throttle(long elapsedNanos) {
+        if (rate <= 0) {
+            return true;
+        }
+
+        long expectedNanos = processed.get() * 1_000_000_000L / rate;
+        if (expectedNanos <= elapsedNanos) {
+            return true;
+        }
+
+        try {
+            Thread.sleep(Duration.ofNanos(expectedNanos - elapsedNanos));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.bankcards.job;
+
+import com.example.bankcards.entity.outbox.OutboxEvent;
+import com.example.bankcards.repository.OutboxEventRepository;
+import com.example.bankcards.service.OutboxSink;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    // Ключ advisory-блокировки ретранслятора, общий для всех узлов
+    private static final long LOCK_KEY = 0x6f7574626f78L;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxSink outboxSink;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration pollInterval;
+
+    private final Counter delivered;
+    private final Counter failed;
+    private final Timer lag;
+
+    private volatile boolean running;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       OutboxSink outboxSink,
+                       TransactionTemplate transactionTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${cards.outbox.enabled:true}") boolean enabled,
+                       @Value("${cards.outbox.batch-size:1000}") int batchSize,
+                       @Value("${cards.outbox.poll-interval:200ms}") Duration pollInterval) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.outboxSink = outboxSink;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+
+        this.delivered = meterRegistry.counter("cards.outbox.events", "result", "delivered");
+        this.failed = meterRegistry.counter("cards.outbox.failures");
+        this.lag = meterRegistry.timer("cards.outbox.lag");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        running = true;
+        Thread.ofVirtual().name("outbox-relay").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    // Порция доставляется и удаляется одной транзакцией: ошибка получателя оставляет события в таблице
+    public int relay() {
+        Integer relayed = transactionTemplate.execute(status -> {
+            if (!outboxEventRepository.tryLock(LOCK_KEY)) {
+                return 0;
+            }
+
+            List<OutboxEvent> events = outboxEventRepository.findByOrderByIdAsc(Limit.of(batchSize));
+            if (events.isEmpty()) {
+                return 0;
+            }
+
+            outboxSink.deliver(events);
+            outboxEventRepository.deleteAllByIdInBatch(events.stream().map(OutboxEvent::getId).toList());
+            lag.record(Duration.between(events.get(0).getCreatedAt(), LocalDateTime.now()));
+            return events.size();
+        });
+
+        int count = relayed != null ? relayed : 0;
+        delivered.increment(count);
+        return count;
+    }
+
+    // Полные порции забираются без паузы, пока таблица не опустеет
+    private void run() {
+        while (running) {
+            try {
+                if (relay() < batchSize) {
+                    Thread.sleep(pollInterval);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failed.increment();
+                log.error("Ошибка при доставке событий outbox", e);
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.bankcards.job;
+
+import com.example.bankcards.entity.standing.StandingOrder;
+import com.example.bankcards.service.StandingOrderService;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class StandingOrderScheduler {
+
+    private static final Duration YIELD_PAUSE = Duration.ofMillis(20);
+    private static final Duration MAX_YIELD = Duration.ofSeconds(1);
+
+    private final StandingOrderService standingOrderService;
+    private final IntSupplier connectionWaiters;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int rate;
+    private final boolean yieldToInteractive;
+    private final Duration pollInterval;
+
+    private final Semaphore permits;
+    private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+    private final Counter yielded;
+
+    private volatile boolean running;
+
+    @Autowired
+    public StandingOrderScheduler(StandingOrderService standingOrderService,
+                                  DataSource dataSource,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${cards.transfer.scheduled.enabled:true}") boolean enabled,
+                                  @Value("${cards.transfer.scheduled.batch-size:500}") int batchSize,
+                                  @Value("${cards.transfer.scheduled.parallelism:4}") int parallelism,
+                                  @Value("${cards.transfer.scheduled.rate:2000}") int rate,
+                                  @Value("${cards.transfer.scheduled.yield-to-interactive:true}") boolean yieldToInteractive,
+                                  @Value("${cards.transfer.scheduled.poll-interval:1s}") Duration pollInterval) {
+        this(standingOrderService, connectionWaiters(dataSource), meterRegistry,
+                enabled, batchSize, parallelism, rate, yieldToInteractive, pollInterval);
+    }
+
+    StandingOrderScheduler(StandingOrderService standingOrderService,
+                           IntSupplier connectionWaiters,
+                           MeterRegistry meterRegistry,
+                           boolean enabled,
+                           int batchSize,
+                           int parallelism,
+                           int rate,
+                           boolean yieldToInteractive,
+                           Duration pollInterval) {
+        this.standingOrderService = standingOrderService;
+        this.connectionWaiters = connectionWaiters;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.rate = rate;
+        this.yieldToInteractive = yieldToInteractive;
+        this.pollInterval = pollInterval;
+        this.permits = new Semaphore(parallelism);
+        this.yielded = meterRegistry.counter("cards.transfer.scheduled.yields");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        running = true;
+        Thread.ofVirtual().name("standing-orders").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    // Разбирает все наступившие переводы порциями; новая порция забирается после завершения предыдущей
+    public int drain() throws InterruptedException {
+        int executed = 0;
+        while (true) {
+            List<StandingOrder> orders = standingOrderService.claim(batchSize);
+            if (orders.isEmpty()) {
+                return executed;
+            }
+            execute(orders);
+            executed += orders.size();
+        }
+    }
+
+    // Переводы с одной карты выполняются последовательно в одном потоке и не спорят за ее блокировку,
+    // разные карты обрабатываются параллельно, но не более parallelism потоков: каждый держит соединение с базой
+    private void execute(List<StandingOrder> orders) throws InterruptedException {
+        Map<Long, List<StandingOrder>> byCard = orders.stream()
+                .collect(Collectors.groupingBy(StandingOrder::getFromCardId, LinkedHashMap::new, Collectors.toList()));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<StandingOrder> cardOrders : byCard.values()) {
+                permits.acquire();
+                executor.submit(() -> {
+                    try {
+                        for (StandingOrder order : cardOrders) {
+                            pace();
+                            execute(order);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+    }
+
+    private void execute(StandingOrder order) {
+        try {
+            standingOrderService.execute(order);
+        } catch (Exception e) {
+            // Строка останется под арендой и будет забрана снова после ее истечения
+            log.error("Ошибка при исполнении регулярного перевода. ID: {}", order.getId(), e);
+        }
+    }
+
+    // Общий темп для всех потоков: каждый перевод занимает следующий временной слот и ждет его наступления
+    private void pace() throws InterruptedException {
+        if (yieldToInteractive) {
+            yieldToInteractive();
+        }
+        if (rate <= 0) {
+            return;
+        }
+
+        long interval = 1_000_000_000L / rate;
+        long now = System.nanoTime();
+        long slot = Math.max(nextSlot.getAndAccumulate(now, (next, current) -> Math.max(next, current) + interval), now);
+        if (slot > now) {
+            Thread.sleep(Duration.ofNanos(slot - now));
+        }
+    }
+
+    // Пока интерактивные запросы ждут соединение из пула, планировщик уступает его, но не дольше MAX_YIELD на перевод
+    private void yieldToInteractive() throws InterruptedException {
+        long deadline = System.nanoTime() + MAX_YIELD.toNanos();
+        while (connectionWaiters.getAsInt() > 0 && System.nanoTime() < deadline) {
+            yielded.increment();
+            Thread.sleep(YIELD_PAUSE);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                int executed = drain();
+                if (executed > 0) {
+                    log.info("Выполнено регулярных переводов: {}", executed);
+                }
+                Thread.sleep(pollInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Ошибка при обработке регулярных переводов", e);
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Пул создается при первом соединении, до этого ожидающих нет
+    private static IntSupplier connectionWaiters(DataSource dataSource) {
+        if (!(dataSource instanceof HikariDataSource hikari)) {
+            return () -> 0;
+        }
+        return () -> {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+        };
+    }
+}
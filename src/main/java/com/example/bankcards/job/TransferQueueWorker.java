@@ -0,0 +1,83 @@
+package com.example.bankcards.job;
+
+import com.example.bankcards.entity.transfer.TransferOrder;
+import com.example.bankcards.service.TransferQueueService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+@Slf4j
+@Component
+public class TransferQueueWorker {
+
+    private final TransferQueueService transferQueueService;
+    private final boolean enabled;
+    private final int workers;
+    private final int batchSize;
+    private final Duration pollInterval;
+
+    private volatile boolean running;
+
+    public TransferQueueWorker(TransferQueueService transferQueueService,
+                               @Value("${cards.transfer.async.enabled:true}") boolean enabled,
+                               @Value("${cards.transfer.async.workers:4}") int workers,
+                               @Value("${cards.transfer.async.batch-size:32}") int batchSize,
+                               @Value("${cards.transfer.async.poll-interval:200ms}") Duration pollInterval) {
+        this.transferQueueService = transferQueueService;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            Thread.ofVirtual().name("transfer-queue-" + i).start(this::run);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    // Забирает порцию переводов и выполняет их по одному; пустая очередь опрашивается с интервалом
+    public int poll() {
+        List<TransferOrder> orders = transferQueueService.claim(batchSize);
+        orders.forEach(transferQueueService::process);
+        return orders.size();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (poll() == 0) {
+                    Thread.sleep(pollInterval);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Ошибка при обработке очереди переводов", e);
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -2,12 +2,110 @@ package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.card.Card;
 import com.example.bankcards.entity.user.User;
+import com.example.bankcards.util.CardKeyRing;
+import com.example.bankcards.util.Money;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface CardRepository extends JpaRepository<Card, Long> {
 
     Page<Card> findByUser(User user, Pageable pageable);
+    List<Card> findAllByUser(User user);
+    Optional<Card> findByNumberHash(String numberHash);
+
+    @Query("select c.id from Card c where c.numberHash = :numberHash")
+    Optional<Long> findIdByNumberHash(@Param("numberHash") String numberHash);
+
+    interface CardBalance {
+        Money getBalance();
+        String getOwnerEmail();
+    }
+
+    // Баланс с email владельца одним запросом: номер карты не читается и не расшифровывается
+    @Query("select c.balance as balance, u.email as ownerEmail from Card c join c.user u where c.id = :id")
+    Optional<CardBalance> findBalanceById(@Param("id") Long id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id = :id")
+    Optional<Card> findByIdForUpdate(@Param("id") Long id);
+
+    // Строки блокируются в порядке сортировки, как и при переводе по одной карте
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id in :ids order by c.id")
+    List<Card> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    // Версия увеличивается, чтобы параллельное сохранение сущности не перезаписало баланс.
+    // SQL, а не JPQL: баланс сущности хранится как Money, а арифметика выполняется над колонкой DECIMAL
+    @Modifying
+    @Query(value = "update cards set balance = balance - :amount, version = version + 1"
+            + " where id = :id and user_id = :userId and status = :status and balance >= :amount",
+            nativeQuery = true)
+    int debit(@Param("id") Long id, @Param("userId") Long userId, @Param("amount") BigDecimal amount, @Param("status") String status);
+
+    @Modifying
+    @Query(value = "update cards set balance = balance + :amount, version = version + 1"
+            + " where id = :id and user_id = :userId and status = :status",
+            nativeQuery = true)
+    int credit(@Param("id") Long id, @Param("userId") Long userId, @Param("amount") BigDecimal amount, @Param("status") String status);
+
+    // Зачисление на чужую карту: владелец не проверяется, только статус
+    @Modifying
+    @Query(value = "update cards set balance = balance + :amount, version = version + 1"
+            + " where id = :id and status = :status",
+            nativeQuery = true)
+    int creditAny(@Param("id") Long id, @Param("amount") BigDecimal amount, @Param("status") String status);
+
+    // Действует до конца текущей транзакции
+    @Query(value = "select set_config('lock_timeout', :timeout, true)", nativeQuery = true)
+    String setLockTimeout(@Param("timeout") String timeout);
+
+    @Query("select c.numberHash from Card c where c.numberHash in :hashes")
+    List<String> findExistingNumberHashes(@Param("hashes") Collection<String> hashes);
+
+    @Query("select c.id from Card c where (c.numberHash is null or c.lastFour is null) and c.id > :afterId order by c.id")
+    List<Long> findIdsToBackfill(@Param("afterId") Long afterId, Limit limit);
+
+    interface CardNumber {
+        Long getId();
+        byte[] getNumber();
+    }
+
+    // Для фоновых заданий: сущности не загружаются, чтобы не перезаписать баланс при сохранении
+    @Query("select c.id as id, c.number as number from Card c where c.id in :ids order by c.id")
+    List<CardNumber> findNumbersByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Версия увеличивается, чтобы параллельное сохранение сущности не вернуло пустые значения
+    @Modifying
+    @Query(value = "update cards set number_hash = :numberHash, last_four = :lastFour, version = version + 1 where id = :id",
+            nativeQuery = true)
+    int updateNumberHash(@Param("id") Long id, @Param("numberHash") String numberHash, @Param("lastFour") String lastFour);
+
+    // Условие на прежнее значение: номер, параллельно перешифрованный ротацией ключа пользователя, не затирается
+    @Modifying
+    @Query(value = "update cards set number = :number, version = version + 1 where id = :id and number = :previous",
+            nativeQuery = true)
+    int updateNumber(@Param("id") Long id, @Param("previous") byte[] previous, @Param("number") byte[] number);
+
+    // Номера, зашифрованные ключом пользователя, при смене мастер-ключа не трогаются: перешифровывается только сам ключ
+    @Query(value = "select id from cards where get_byte(number, 0) not in (:version, " + CardKeyRing.DATA_KEY_VERSION + ")"
+            + " and id > :afterId order by id limit :limit",
+            nativeQuery = true)
+    List<Long> findIdsNotEncryptedWith(@Param("version") int version, @Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Query(value = "select count(*) from cards where get_byte(number, 0) not in (:version, " + CardKeyRing.DATA_KEY_VERSION + ")",
+            nativeQuery = true)
+    long countNotEncryptedWith(@Param("version") int version);
 
 }
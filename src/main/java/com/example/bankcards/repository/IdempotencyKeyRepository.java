@@ -0,0 +1,40 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.idempotency.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, Long> {
+
+    Optional<IdempotencyKey> findByUserIdAndKey(Long userId, String key);
+
+    // При конфликте с незафиксированной вставкой того же ключа PostgreSQL ждет завершения первой транзакции
+    @Modifying
+    @Query(value = "insert into idempotency_keys (user_id, idempotency_key, request_hash, created_at)"
+            + " values (:userId, :key, :requestHash, :createdAt) on conflict (user_id, idempotency_key) do nothing",
+            nativeQuery = true)
+    int claim(@Param("userId") Long userId,
+              @Param("key") String key,
+              @Param("requestHash") String requestHash,
+              @Param("createdAt") LocalDateTime createdAt);
+
+    @Modifying
+    @Query("update IdempotencyKey k set k.operationId = :operationId where k.userId = :userId and k.key = :key")
+    int complete(@Param("userId") Long userId, @Param("key") String key, @Param("operationId") UUID operationId);
+
+    // Освобождает ключ, занятый отклоненным переводом, если группа шарда все равно фиксируется
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.userId = :userId and k.key = :key and k.operationId is null")
+    int release(@Param("userId") Long userId, @Param("key") String key);
+
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+
+}
@@ -0,0 +1,64 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.ledger.LedgerEntry;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+
+    List<LedgerEntry> findByCardIdOrderByCreatedAtDescIdDesc(Long cardId, Limit limit);
+
+    // Поиск по индексу (card_id, created_at, id) с позиции курсора: время не зависит от глубины страницы
+    @Query(value = "select * from ledger_entries where card_id = :cardId and (created_at, id) < (:createdAt, :id)"
+            + " order by created_at desc, id desc limit :limit",
+            nativeQuery = true)
+    List<LedgerEntry> findPageBefore(@Param("cardId") Long cardId,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("id") Long id,
+                                     @Param("limit") int limit);
+
+    interface VelocityBucket {
+        Long getCardId();
+        Long getUserId();
+        Long getBucket();
+        BigDecimal getAmount();
+        Long getTransfers();
+    }
+
+    String VELOCITY_SELECT = "select e.card_id as cardId, c.user_id as userId,"
+            + " cast(floor(extract(epoch from e.created_at) / :bucketSeconds) as bigint) as bucket,"
+            + " sum(e.amount) as amount, count(*) as transfers"
+            + " from ledger_entries e join cards c on c.id = e.card_id";
+
+    String VELOCITY_GROUP = " group by e.card_id, c.user_id, bucket";
+
+    // Списания переводами, сгруппированные по карте и интервалу: восстановление лимитов без чтения отдельных записей
+    // Условие совпадает с частичным индексом idx_ledger_entries_transfer_debits: журнал читается только за последние сутки
+    @Query(value = VELOCITY_SELECT + " where e.type = 'DEBIT' and e.operation = 'TRANSFER' and e.created_at >= :since"
+            + VELOCITY_GROUP, nativeQuery = true)
+    List<VelocityBucket> findVelocitySince(@Param("since") LocalDateTime since, @Param("bucketSeconds") long bucketSeconds);
+
+    @Query(value = VELOCITY_SELECT + " where e.card_id = :cardId and e.type = 'DEBIT' and e.operation = 'TRANSFER'"
+            + " and e.created_at >= :since" + VELOCITY_GROUP, nativeQuery = true)
+    List<VelocityBucket> findVelocityByCard(@Param("cardId") Long cardId,
+                                            @Param("since") LocalDateTime since,
+                                            @Param("bucketSeconds") long bucketSeconds);
+
+    @Query(value = VELOCITY_SELECT + " where c.user_id = :userId and e.type = 'DEBIT' and e.operation = 'TRANSFER'"
+            + " and e.created_at >= :since" + VELOCITY_GROUP, nativeQuery = true)
+    List<VelocityBucket> findVelocityByUser(@Param("userId") Long userId,
+                                            @Param("since") LocalDateTime since,
+                                            @Param("bucketSeconds") long bucketSeconds);
+
+    // Для сверки: сумма движений по карте должна совпадать со снимком баланса
+    @Query("select coalesce(sum(case when e.type = com.example.bankcards.entity.ledger.EntryType.CREDIT"
+            + " then e.amount else -e.amount end), 0) from LedgerEntry e where e.cardId = :cardId")
+    BigDecimal sumByCardId(@Param("cardId") Long cardId);
+
+}
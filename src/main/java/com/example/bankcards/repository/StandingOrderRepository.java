@@ -0,0 +1,63 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.standing.StandingOrder;
+import com.example.bankcards.entity.standing.StandingOrderStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface StandingOrderRepository extends JpaRepository<StandingOrder, Long> {
+
+    Page<StandingOrder> findByUserId(Long userId, Pageable pageable);
+
+    Optional<StandingOrder> findByIdAndUserId(Long id, Long userId);
+
+    // SKIP LOCKED: узлы разбирают разные строки; locked_until одновременно аренда и время повтора после ошибки
+    @Query(value = "update standing_orders set attempts = attempts + 1, locked_until = :lockedUntil"
+            + " where id in (select id from standing_orders"
+            + " where status = 'ACTIVE' and next_run_at <= :now and (locked_until is null or locked_until < :now)"
+            + " order by priority desc, next_run_at limit :limit for update skip locked)"
+            + " returning *",
+            nativeQuery = true)
+    List<StandingOrder> claim(@Param("limit") int limit,
+                              @Param("now") LocalDateTime now,
+                              @Param("lockedUntil") LocalDateTime lockedUntil);
+
+    // Условие по статусу: перевод, отмененный во время исполнения, не возвращается в работу
+    @Modifying
+    @Query("update StandingOrder o set o.status = :status, o.runs = :runs, o.nextRunAt = :nextRunAt, o.attempts = 0,"
+            + " o.lockedUntil = null, o.lastRunAt = :now, o.lastOperationId = :operationId, o.lastError = :error"
+            + " where o.id = :id and o.status = :active")
+    int advance(@Param("id") Long id,
+                @Param("active") StandingOrderStatus active,
+                @Param("status") StandingOrderStatus status,
+                @Param("runs") int runs,
+                @Param("nextRunAt") LocalDateTime nextRunAt,
+                @Param("operationId") UUID operationId,
+                @Param("error") String error,
+                @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update StandingOrder o set o.lockedUntil = :retryAt, o.lastError = :error where o.id = :id")
+    int postpone(@Param("id") Long id, @Param("retryAt") LocalDateTime retryAt, @Param("error") String error);
+
+    // Превышение лимита не расходует попытки: откладывание длится, пока лимит не освободится
+    @Modifying
+    @Query("update StandingOrder o set o.lockedUntil = :retryAt, o.lastError = :error, o.attempts = 0 where o.id = :id")
+    int postponeForLimit(@Param("id") Long id, @Param("retryAt") LocalDateTime retryAt, @Param("error") String error);
+
+    @Modifying
+    @Query("update StandingOrder o set o.status = :status, o.nextRunAt = null where o.id = :id and o.status = :active")
+    int cancel(@Param("id") Long id,
+               @Param("active") StandingOrderStatus active,
+               @Param("status") StandingOrderStatus status);
+
+}
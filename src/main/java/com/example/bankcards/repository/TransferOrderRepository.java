@@ -0,0 +1,53 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.transfer.TransferOrder;
+import com.example.bankcards.entity.transfer.TransferOrderStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface TransferOrderRepository extends JpaRepository<TransferOrder, UUID> {
+
+    Optional<TransferOrder> findByIdAndUserId(UUID id, Long userId);
+
+    // SKIP LOCKED: воркеры разбирают разные строки и не ждут друг друга; строки сразу получают аренду.
+    // Возвращенный в очередь перевод не забирается до истечения своей задержки
+    @Query(value = "update transfer_orders set status = 'PROCESSING', attempts = attempts + 1,"
+            + " locked_until = :lockedUntil, updated_at = :now"
+            + " where id in (select id from transfer_orders"
+            + " where (status = 'PENDING' and (locked_until is null or locked_until <= :now))"
+            + " or (status = 'PROCESSING' and locked_until < :now)"
+            + " order by created_at limit :limit for update skip locked)"
+            + " returning *",
+            nativeQuery = true)
+    List<TransferOrder> claim(@Param("limit") int limit,
+                              @Param("now") LocalDateTime now,
+                              @Param("lockedUntil") LocalDateTime lockedUntil);
+
+    @Modifying
+    @Query("update TransferOrder o set o.status = :status, o.operationId = :operationId, o.error = :error,"
+            + " o.lockedUntil = null, o.updatedAt = :now where o.id = :id")
+    int updateStatus(@Param("id") UUID id,
+                     @Param("status") TransferOrderStatus status,
+                     @Param("operationId") UUID operationId,
+                     @Param("error") String error,
+                     @Param("now") LocalDateTime now);
+
+    // Возврат в очередь после временной ошибки: locked_until хранит время, раньше которого перевод не забирается
+    @Modifying
+    @Query("update TransferOrder o set o.status = com.example.bankcards.entity.transfer.TransferOrderStatus.PENDING,"
+            + " o.lockedUntil = :retryAt, o.updatedAt = :now where o.id = :id")
+    int release(@Param("id") UUID id, @Param("retryAt") LocalDateTime retryAt, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("delete from TransferOrder o where o.status in :statuses and o.updatedAt < :before")
+    int deleteBefore(@Param("statuses") Collection<TransferOrderStatus> statuses, @Param("before") LocalDateTime before);
+
+}
@@ -1,8 +1,15 @@
 package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.user.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
@@ -10,4 +17,36 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     boolean existsByEmail(String email);
 
+    @Modifying
+    @Query("update User u set u.dataKey = :dataKey where u.id = :id and u.dataKey is null")
+    int initDataKey(@Param("id") Long id, @Param("dataKey") byte[] dataKey);
+
+    @Query("select u.dataKey from User u where u.id = :id")
+    byte[] findDataKey(@Param("id") Long id);
+
+    // Создание карты и ротация ключа пользователя выполняются по очереди
+    @Query(value = "select data_key from users where id = :id for update", nativeQuery = true)
+    byte[] findDataKeyForUpdate(@Param("id") Long id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u from User u where u.id = :id")
+    Optional<User> findByIdForUpdate(@Param("id") Long id);
+
+    // Условие на прежнее значение: ключ, параллельно замененный другим запросом, не затирается
+    @Modifying
+    @Query(value = "update users set data_key = :dataKey where id = :id and data_key = :previous", nativeQuery = true)
+    int replaceDataKey(@Param("id") Long id, @Param("previous") byte[] previous, @Param("dataKey") byte[] dataKey);
+
+    interface UserDataKey {
+        Long getId();
+        byte[] getDataKey();
+    }
+
+    @Query("select u.id as id, u.dataKey as dataKey from User u where u.id in :ids order by u.id")
+    List<UserDataKey> findDataKeysByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "select id from users where data_key is not null and get_byte(data_key, 0) <> :version and id > :afterId order by id limit :limit",
+            nativeQuery = true)
+    List<Long> findIdsWithDataKeyNotWrappedWith(@Param("version") int version, @Param("afterId") Long afterId, @Param("limit") int limit);
+
 }
@@ -44,7 +44,9 @@ public class SecurityConfig {
                                         "/v3/api-docs.yaml",
                                         "/swagger-ui.html",
                                         "/swagger-ui/**",
-                                        "/webjars/**").permitAll()
+                                        "/webjars/**",
+                                        "/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .requestMatchers("/api/v1/admin/users/**",
                                          "/api/v1/admin/cards/**").hasRole("ADMIN")
                         .requestMatchers("/api/v1/cards/**").hasRole("USER")
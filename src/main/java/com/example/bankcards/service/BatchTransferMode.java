@@ -0,0 +1,11 @@
+package com.example.bankcards.service;
+
+public enum BatchTransferMode {
+
+    // Любой отклоненный перевод откатывает весь пакет
+    ALL_OR_NOTHING,
+
+    // Отклоненные переводы пропускаются, остальные выполняются
+    PER_ITEM
+
+}
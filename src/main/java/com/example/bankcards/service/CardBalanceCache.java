@@ -0,0 +1,76 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.Money;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+@Service
+public class CardBalanceCache {
+
+    private final CardRepository cardRepository;
+
+    // Вместе с балансом хранится email владельца: проверка доступа при попадании не обращается к базе
+    private final Cache<Long, CachedBalance> balances;
+
+    public CardBalanceCache(CardRepository cardRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${cards.balance.cache-size:100000}") long cacheSize,
+                            @Value("${cards.balance.cache-ttl:10s}") Duration cacheTtl) {
+        this.cardRepository = cardRepository;
+        this.balances = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, balances, "cards.balances");
+    }
+
+    private record CachedBalance(Money balance, String ownerEmail) {}
+
+    // Отсутствующая карта не кэшируется
+    public Money balance(String email, Long cardId) {
+        CachedBalance cached = balances.get(cardId, id -> cardRepository
+                .findBalanceById(id)
+                .map(view -> new CachedBalance(view.getBalance(), view.getOwnerEmail()))
+                .orElseThrow(() -> new NotFoundException("Карта не найдена. ID: " + id)));
+
+        if (!cached.ownerEmail().equals(email)) {
+            throw new CardOperationException("Вы не являетесь владельцем этой карты.");
+        }
+        return cached.balance();
+    }
+
+    public void evict(Long cardId) {
+        evictAll(List.of(cardId));
+    }
+
+    // Сброс после коммита: до него чтение вернуло бы из базы старый баланс и снова положило его в кэш.
+    // Загрузка, начатая до коммита, не переживет сброс: invalidate ждет завершения загрузки того же ключа.
+    // Изменения на других узлах видны не позже cache-ttl
+    public void evictAll(Collection<Long> cardIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            balances.invalidateAll(cardIds);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                balances.invalidateAll(cardIds);
+            }
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Переводы по одним и тем же картам ждут друг друга в памяти, а не на блокировке строки с занятым соединением пула.
+// Работает только в пределах одного экземпляра: при нескольких узлах отключается, корректность обеспечивает БД
+@Service
+public class CardLockManager {
+
+    private final boolean enabled;
+    private final long timeoutNanos;
+    private final ReentrantLock[] stripes;
+    private final Timer[] waitTimers;
+
+    public CardLockManager(MeterRegistry meterRegistry,
+                           @Value("${cards.transfer.local-locks.enabled:true}") boolean enabled,
+                           @Value("${cards.transfer.local-locks.stripes:64}") int stripes,
+                           @Value("${cards.transfer.local-locks.timeout:5s}") Duration timeout) {
+        this.enabled = enabled;
+        this.timeoutNanos = timeout.toNanos();
+        this.stripes = new ReentrantLock[stripes];
+        this.waitTimers = new Timer[stripes];
+
+        for (int i = 0; i < stripes; i++) {
+            ReentrantLock lock = new ReentrantLock();
+            String stripe = String.valueOf(i);
+            this.stripes[i] = lock;
+            this.waitTimers[i] = meterRegistry.timer("cards.transfer.lock.wait", "stripe", stripe);
+            Gauge.builder("cards.transfer.lock.queue", lock, ReentrantLock::getQueueLength)
+                    .tag("stripe", stripe)
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Полосы берутся по возрастанию номера, поэтому встречные переводы не блокируют друг друга навсегда
+    public <T> T withLocks(Collection<Long> cardIds, Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Long cardId : cardIds) {
+            indexes.add(stripe(cardId));
+        }
+
+        List<ReentrantLock> acquired = new ArrayList<>(indexes.size());
+        try {
+            for (int index : indexes) {
+                acquire(index);
+                acquired.add(stripes[index]);
+            }
+            return action.get();
+        } finally {
+            for (int i = acquired.size() - 1; i >= 0; i--) {
+                acquired.get(i).unlock();
+            }
+        }
+    }
+
+    int stripe(Long cardId) {
+        // Перемешивание битов, чтобы последовательные ID не попадали в соседние полосы одной группой
+        long hash = cardId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(hash ^ (hash >>> 32), (long) stripes.length);
+    }
+
+    private void acquire(int index) {
+        long startedAt = System.nanoTime();
+        boolean locked;
+        try {
+            locked = stripes[index].tryLock(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("Ожидание блокировки карты прервано", e);
+        } finally {
+            waitTimers[index].record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+
+        if (!locked) {
+            throw new CannotAcquireLockException("Карта занята другой операцией");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardNumberHash;
+import com.example.bankcards.util.NumberGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Slf4j
+@Service
+public class CardNumberAllocator {
+
+    private static final int REFILL_BATCH = 1000;
+
+    private final CardRepository cardRepository;
+    private final CardNumberHash cardNumberHash;
+    private final List<BinRange> bins;
+    private final int lowWatermark;
+
+    private final BlockingQueue<AllocatedNumber> pool;
+    private final Set<String> pooledHashes = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    public CardNumberAllocator(CardRepository cardRepository,
+                               CardNumberHash cardNumberHash,
+                               @Value("${cards.number.bins:220000-220099}") List<String> bins,
+                               @Value("${cards.number.pool-size:10000}") int poolSize) {
+        this.cardRepository = cardRepository;
+        this.cardNumberHash = cardNumberHash;
+        this.bins = bins.stream().map(BinRange::parse).toList();
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+        this.lowWatermark = poolSize / 4;
+    }
+
+    public record AllocatedNumber(String number, String hash) {}
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prefill() {
+        refillAsync();
+    }
+
+    public AllocatedNumber allocate() {
+        AllocatedNumber allocated = pool.poll();
+        if (pool.size() < lowWatermark) {
+            refillAsync();
+        }
+
+        if (allocated == null) {
+            // Фоновое пополнение не успело: генерируем небольшую порцию в текущем потоке
+            refill(Math.min(REFILL_BATCH, pool.remainingCapacity()));
+            allocated = pool.poll();
+            if (allocated == null) {
+                throw new CardOperationException("Не удалось выделить номер карты");
+            }
+        }
+
+        pooledHashes.remove(allocated.hash());
+        return allocated;
+    }
+
+    public int available() {
+        return pool.size();
+    }
+
+    int refill(int count) {
+        if (count <= 0) {
+            return 0;
+        }
+
+        Map<String, String> candidates = new LinkedHashMap<>();
+        for (int attempt = 0; candidates.size() < count && attempt < count * 2; attempt++) {
+            String number = NumberGenerator.generateNumber(randomBin());
+            String hash = cardNumberHash.hash(number);
+            if (!pooledHashes.contains(hash)) {
+                candidates.putIfAbsent(hash, number);
+            }
+        }
+
+        Set<String> issued = new HashSet<>(cardRepository.findExistingNumberHashes(candidates.keySet()));
+        int added = 0;
+        for (Map.Entry<String, String> candidate : candidates.entrySet()) {
+            String hash = candidate.getKey();
+            if (issued.contains(hash) || !pooledHashes.add(hash)) {
+                continue;
+            }
+            if (!pool.offer(new AllocatedNumber(candidate.getValue(), hash))) {
+                pooledHashes.remove(hash);
+                break;
+            }
+            added++;
+        }
+        return added;
+    }
+
+    private void refillAsync() {
+        if (!refilling.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread.ofVirtual().name("card-number-refill").start(() -> {
+            try {
+                // Останавливаемся, если порция не дала новых номеров: диапазоны BIN почти исчерпаны
+                int added;
+                do {
+                    added = refill(Math.min(REFILL_BATCH, pool.remainingCapacity()));
+                } while (added > 0 && pool.remainingCapacity() > 0);
+            } catch (Exception e) {
+                log.error("Ошибка при пополнении пула номеров карт", e);
+            } finally {
+                refilling.set(false);
+            }
+        });
+    }
+
+    private String randomBin() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        BinRange range = bins.get(random.nextInt(bins.size()));
+
+        long bin = range.from() == range.to() ? range.from() : random.nextLong(range.from(), range.to() + 1);
+        String value = Long.toString(bin);
+        return "0".repeat(range.length() - value.length()) + value;
+    }
+
+    private record BinRange(long from, long to, int length) {
+
+        private static BinRange parse(String value) {
+            String[] bounds = value.trim().split("-");
+            String from = bounds[0].trim();
+            String to = bounds.length > 1 ? bounds[1].trim() : from;
+
+            if (bounds.length > 2 || from.length() != to.length() || from.isEmpty()
+                    || from.length() >= NumberGenerator.LENGTH
+                    || !(from + to).chars().allMatch(Character::isDigit)
+                    || Long.parseLong(from) > Long.parseLong(to)) {
+                throw new IllegalArgumentException("Неверный диапазон BIN: " + value);
+            }
+
+            return new BinRange(Long.parseLong(from), Long.parseLong(to), from.length());
+        }
+    }
+}
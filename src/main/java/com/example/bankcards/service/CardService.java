@@ -1,39 +1,63 @@
 package com.example.bankcards.service;
 
 
+import com.example.bankcards.dto.event.CardCreatedEvent;
+import com.example.bankcards.dto.event.CardStatusChangedEvent;
+import com.example.bankcards.dto.request.card.CardBatchTransferRequest;
 import com.example.bankcards.dto.request.card.CardCreateRequest;
+import com.example.bankcards.dto.request.card.CardNumberTransferRequest;
 import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.response.card.BatchTransferItemResponse;
+import com.example.bankcards.dto.response.card.BatchTransferResponse;
 import com.example.bankcards.dto.response.card.CardResponse;
+import com.example.bankcards.dto.response.card.TransactionPageResponse;
 import com.example.bankcards.entity.card.Card;
 import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.outbox.OutboxEventType;
 import com.example.bankcards.entity.user.User;
 import com.example.bankcards.exception.CardOperationException;
 import com.example.bankcards.exception.NotFoundException;
 import com.example.bankcards.repository.CardRepository;
-import com.example.bankcards.util.EncryptCard;
-import com.example.bankcards.util.NumberGenerator;
+import com.example.bankcards.util.CardNumberHash;
+import com.example.bankcards.util.Money;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @AllArgsConstructor
 public class CardService {
 
+    private static final int MAX_CREATE_ATTEMPTS = 3;
+    private static final String NUMBER_HASH_INDEX = "idx_cards_number_hash";
+
     private final CardRepository cardRepository;
     private final UserService userService;
-    private final EncryptCard encryptCard;
+    private final DataKeyService dataKeyService;
+    private final CardNumberHash cardNumberHash;
+    private final CardNumberAllocator cardNumberAllocator;
+    private final TransferService transferService;
+    private final LedgerService ledgerService;
+    private final IdempotencyService idempotencyService;
+    private final RecipientResolver recipientResolver;
+    private final OutboxService outboxService;
+    private final CardBalanceCache cardBalanceCache;
+    private final TransactionTemplate transactionTemplate;
 
     @Transactional(readOnly = true)
     public Page<CardResponse> findAllCards(Pageable pageable) {
         Page<Card> cards = cardRepository.findAll(pageable);
 
-        return cards.map(this::response);
+        return responses(cards);
     }
 
     @Transactional(readOnly = true)
@@ -41,7 +65,7 @@ public class CardService {
         User user = userService.findByEmail(email);
         Page<Card> cards = cardRepository.findByUser(user, pageable);
 
-        return cards.map(this::response);
+        return responses(cards);
     }
 
     @Transactional(readOnly = true)
@@ -55,7 +79,7 @@ public class CardService {
 
         return new CardResponse(
                 card.getId(),
-                numberMask(card.getNumber(), true),
+                numberMask(card),
                 user.getFirstName(),
                 user.getSecondName(),
                 card.getExpirationDate(),
@@ -65,30 +89,71 @@ public class CardService {
     }
 
     @Transactional(readOnly = true)
-    public BigDecimal findCardBalance(String email, Long cardId) {
-        return findCardByEmailAndId(email, cardId).balance();
+    public CardResponse findCardByNumber(String number) {
+        Card card = cardRepository
+                .findByNumberHash(cardNumberHash.hash(number))
+                .orElseThrow(() -> new NotFoundException("Карта с указанным номером не найдена"));
+
+        return response(card, numberMask(CardNumberHash.normalize(number)));
     }
 
-    @Transactional
+    // Без транзакции: при попадании в кэш соединение из пула не берется
+    public Money findCardBalance(String email, Long cardId) {
+        return cardBalanceCache.balance(email, cardId);
+    }
+
+    @Transactional(readOnly = true)
+    public TransactionPageResponse findTransactions(String email, Long cardId, String cursor, int size) {
+        User user = userService.findByEmail(email);
+        Card card = findCardById(cardId);
+
+        if (!card.getUser().equals(user)) {
+            throw new CardOperationException("Вы не являетесь владельцем этой карты.");
+        }
+
+        return ledgerService.history(cardId, cursor, size);
+    }
+
+    // Номер проверяется при выделении, но другой узел может одновременно выдать тот же номер:
+    // при конфликте уникального индекса карта создается заново в новой транзакции с другим номером
     public CardResponse createCard(CardCreateRequest cardCreateRequest) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> insertCard(cardCreateRequest));
+            } catch (DataIntegrityViolationException e) {
+                if (attempt >= MAX_CREATE_ATTEMPTS || !isNumberHashConflict(e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private CardResponse insertCard(CardCreateRequest cardCreateRequest) {
         User user = userService.findByEmail(cardCreateRequest.email());
 
-        String cardNumber = NumberGenerator.generateNumber();
-        String encryptNumber = encryptCard.encrypt(cardNumber);
+        CardNumberAllocator.AllocatedNumber allocated = cardNumberAllocator.allocate();
+        String cardNumber = allocated.number();
+
+        byte[] encryptNumber = dataKeyService.encrypt(user, cardNumber);
 
         Card card = Card.builder()
                 .number(encryptNumber)
+                .numberHash(allocated.hash())
+                .lastFour(cardNumber.substring(cardNumber.length() - 4))
                 .user(user)
                 .expirationDate(LocalDate.now().plusYears(1))
                 .status(CardStatus.ACTIVE)
-                .balance(BigDecimal.valueOf(1000))
+                .balance(Money.ofMajor(1000))
                 .build();
 
         Card newCard = cardRepository.save(card);
+        ledgerService.recordIssue(newCard.getId(), newCard.getBalance().toBigDecimal());
+        outboxService.publish(OutboxEventType.CARD_CREATED, new CardCreatedEvent(newCard.getId(), user.getId(),
+                newCard.getLastFour(), newCard.getExpirationDate(), newCard.getStatus(), newCard.getBalance()));
 
         return new CardResponse(
                 newCard.getId(),
-                numberMask(cardNumber, false),
+                numberMask(newCard.getLastFour()),
                 user.getFirstName(),
                 user.getSecondName(),
                 newCard.getExpirationDate(),
@@ -97,6 +162,11 @@ public class CardService {
         );
     }
 
+    private static boolean isNumberHashConflict(DataIntegrityViolationException e) {
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null && message.contains(NUMBER_HASH_INDEX);
+    }
+
     @Transactional
     public void updateStatus(Long cardId, CardStatus newStatus) {
         Card card = findCardById(cardId);
@@ -105,8 +175,14 @@ public class CardService {
             throw new CardOperationException("Невозможно активировать просроченную карту");
         }
 
+        CardStatus previous = card.getStatus();
         card.setStatus(newStatus);
         cardRepository.save(card);
+
+        if (previous != newStatus) {
+            outboxService.publish(OutboxEventType.CARD_STATUS_CHANGED,
+                    new CardStatusChangedEvent(card.getId(), card.getUser().getId(), previous, newStatus));
+        }
     }
 
     @Transactional
@@ -114,44 +190,56 @@ public class CardService {
         Card card = findCardById(cardId);
 
         cardRepository.delete(card);
+        cardBalanceCache.evict(cardId);
     }
 
-    @Transactional
-    public void transferMoney(String email, CardTransferRequest cardTransferRequest) {
-        User user = userService.findByEmail(email);
-        Card fromCard = findCardById(cardTransferRequest.fromCardId());
-        Card toCard = findCardById(cardTransferRequest.toCardId());
-
-        if (cardTransferRequest.amount().compareTo(BigDecimal.ZERO) <= 0) {
-            throw new CardOperationException("Сумма должна быть положительной");
+    public TransferResult transferMoney(String email, CardTransferRequest cardTransferRequest, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return transferService.transfer(email, cardTransferRequest, null);
         }
+        return idempotencyService.execute(email, idempotencyKey, cardTransferRequest,
+                () -> transferService.transfer(email, cardTransferRequest, idempotencyKey));
+    }
 
-        if (!fromCard.getUser().equals(user) || !toCard.getUser().equals(user)) {
-            throw new CardOperationException("Перевод возможен только между вашими картами");
+    // Получатель определяется по номеру до перевода, ключ идемпотентности связывается уже с ID его карты
+    public TransferResult transferToCustomer(String email, CardNumberTransferRequest request, String idempotencyKey) {
+        CardTransferRequest resolved = new CardTransferRequest(
+                request.fromCardId(), recipientResolver.resolve(request.toCardNumber()), request.amount());
+        if (idempotencyKey == null) {
+            return transferService.transferToCustomer(email, resolved, null);
         }
+        return idempotencyService.execute(email, idempotencyKey, resolved,
+                () -> transferService.transferToCustomer(email, resolved, idempotencyKey));
+    }
 
-        if (cardTransferRequest.fromCardId().equals(cardTransferRequest.toCardId())) {
-            throw new CardOperationException("Нельзя переводить на ту же карту");
-        }
+    public BatchTransferResponse transferBatch(String email, CardBatchTransferRequest request) {
+        BatchTransferMode mode = request.mode() != null ? request.mode() : BatchTransferMode.ALL_OR_NOTHING;
+        List<BatchTransferItemResponse> items = transferService.transferBatch(email, request.transfers(), mode);
 
-        if (fromCard.getStatus() != CardStatus.ACTIVE || toCard.getStatus() != CardStatus.ACTIVE) {
-            throw new CardOperationException("Перевод возможен только между активными картами");
-        }
+        int completed = (int) items.stream().filter(item -> item.status() == BatchItemStatus.COMPLETED).count();
+        return new BatchTransferResponse(completed, items.size() - completed, items);
+    }
 
-        if (fromCard.getBalance().compareTo(cardTransferRequest.amount()) < 0) {
-            throw new CardOperationException("Недостаточно средств");
-        }
+    private Page<CardResponse> responses(Page<Card> cards) {
+        List<Card> notBackfilled = cards.getContent().stream()
+                .filter(card -> card.getLastFour() == null)
+                .toList();
 
-        fromCard.setBalance(fromCard.getBalance().subtract(cardTransferRequest.amount()));
-        toCard.setBalance(toCard.getBalance().add(cardTransferRequest.amount()));
+        Map<Card, String> decrypted = new IdentityHashMap<>();
+        if (!notBackfilled.isEmpty()) {
+            List<String> numbers = dataKeyService.decryptAll(notBackfilled);
+            for (int i = 0; i < numbers.size(); i++) {
+                decrypted.put(notBackfilled.get(i), numbers.get(i));
+            }
+        }
 
-        cardRepository.save(fromCard);
-        cardRepository.save(toCard);
+        return cards.map(card -> response(
+                card,
+                numberMask(card.getLastFour() != null ? card.getLastFour() : decrypted.get(card))
+        ));
     }
 
-    private CardResponse response(Card card) {
-        String numberMasked = this.numberMask(card.getNumber(), true);
-
+    private CardResponse response(Card card, String numberMasked) {
         return new CardResponse(
                 card.getId(),
                 numberMasked,
@@ -163,18 +251,26 @@ public class CardService {
         );
     }
 
-    private String numberMask(String number, Boolean encrypted) {
-        if (encrypted) {
-            try {
-                number = encryptCard.decrypt(number);
-            } catch (Exception e) {
-                return "**** **** **** ****";
-            }
+    private String numberMask(String number) {
+        if (number == null) {
+            return "**** **** **** ****";
         }
 
         return "**** **** **** " + number.substring(number.length() - 4);
     }
 
+    private String numberMask(Card card) {
+        if (card.getLastFour() != null) {
+            return numberMask(card.getLastFour());
+        }
+
+        try {
+            return numberMask(dataKeyService.decrypt(card));
+        } catch (Exception e) {
+            return numberMask((String) null);
+        }
+    }
+
     private Card findCardById(Long cardId) {
         return cardRepository
                 .findById(cardId)
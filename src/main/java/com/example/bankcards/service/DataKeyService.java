@@ -0,0 +1,177 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.card.Card;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.EncryptCard;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@Slf4j
+@Service
+public class DataKeyService {
+
+    private final UserRepository userRepository;
+    private final CardRepository cardRepository;
+    private final EncryptCard encryptCard;
+    private final int parallelThreshold;
+    private final int parallelism;
+    private final Timer serialTimer;
+    private final Timer parallelTimer;
+
+    // Ключ кэша - зашифрованный ключ пользователя: после ротации старая запись просто перестает запрашиваться
+    private final Cache<ByteBuffer, SecretKey> dataKeys;
+
+    public DataKeyService(UserRepository userRepository,
+                          CardRepository cardRepository,
+                          EncryptCard encryptCard,
+                          MeterRegistry meterRegistry,
+                          @Value("${encrypt.data-key.cache-size:10000}") long cacheSize,
+                          @Value("${encrypt.data-key.cache-ttl:10m}") Duration cacheTtl,
+                          @Value("${cards.decrypt.parallel-threshold:0}") int parallelThreshold,
+                          @Value("${cards.decrypt.parallelism:0}") int parallelism) {
+        this.userRepository = userRepository;
+        this.cardRepository = cardRepository;
+        this.encryptCard = encryptCard;
+        this.parallelThreshold = parallelThreshold;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.serialTimer = meterRegistry.timer("cards.decrypt.page", "mode", "serial");
+        this.parallelTimer = meterRegistry.timer("cards.decrypt.page", "mode", "parallel");
+        this.dataKeys = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(cacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, dataKeys, "cards.data-keys");
+    }
+
+    // Должен вызываться в транзакции создания карты: строка пользователя блокируется до ее конца,
+    // поэтому ротация не заменит ключ, пока карта с номером под текущим ключом не сохранена
+    public byte[] encrypt(User user, String number) {
+        user.setDataKey(userRepository.findDataKeyForUpdate(user.getId()));
+        return encryptCard.encrypt(number, dataKey(user));
+    }
+
+    public String decrypt(Card card) {
+        return encryptCard.decrypt(card.getNumber(), dataKeyFor(card));
+    }
+
+    public List<String> decryptAll(List<Card> cards) {
+        List<byte[]> numbers = new ArrayList<>(cards.size());
+        List<SecretKey> keys = new ArrayList<>(cards.size());
+        for (Card card : cards) {
+            numbers.add(card.getNumber());
+            try {
+                keys.add(dataKeyFor(card));
+            } catch (Exception e) {
+                keys.add(null);
+            }
+        }
+
+        if (parallelThreshold <= 0 || cards.size() < parallelThreshold || parallelism < 2) {
+            return serialTimer.record(() -> encryptCard.decryptAll(numbers, keys));
+        }
+        return parallelTimer.record(() -> decryptParallel(numbers, keys));
+    }
+
+    // Ключи уже разрешены последовательно, в виртуальных потоках выполняется только AES; порядок сохраняется
+    private List<String> decryptParallel(List<byte[]> numbers, List<SecretKey> keys) {
+        int chunk = (numbers.size() + parallelism - 1) / parallelism;
+        List<Future<List<String>>> parts = new ArrayList<>(parallelism);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int from = 0; from < numbers.size(); from += chunk) {
+                int to = Math.min(from + chunk, numbers.size());
+                List<byte[]> numbersPart = numbers.subList(from, to);
+                List<SecretKey> keysPart = keys.subList(from, to);
+                parts.add(executor.submit(() -> encryptCard.decryptAll(numbersPart, keysPart)));
+            }
+        }
+
+        List<String> result = new ArrayList<>(numbers.size());
+        for (int i = 0; i < parts.size(); i++) {
+            try {
+                result.addAll(parts.get(i).get());
+            } catch (ExecutionException e) {
+                log.warn("Ошибка при параллельном дешифровании, номера будут скрыты", e.getCause());
+                result.addAll(Collections.nCopies(Math.min(chunk, numbers.size() - i * chunk), null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Дешифрование прервано", e);
+            }
+        }
+        return result;
+    }
+
+    // Должен вызываться в транзакции: у пользователя без ключа он создается и сохраняется
+    public SecretKey dataKey(User user) {
+        if (user.getDataKey() == null) {
+            SecretKey created = encryptCard.generateDataKey();
+            byte[] wrapped = encryptCard.wrapKey(created);
+
+            // Условный UPDATE: если ключ параллельно создал другой запрос, используем его
+            if (userRepository.initDataKey(user.getId(), wrapped) == 0) {
+                wrapped = userRepository.findDataKey(user.getId());
+            }
+            user.setDataKey(wrapped);
+        }
+
+        return dataKeys.get(ByteBuffer.wrap(user.getDataKey()), wrapped -> encryptCard.unwrapKey(user.getDataKey()));
+    }
+
+    // Новый ключ пользователя: перешифровываются только его карты, номера под мастер-ключом тоже переводятся на него.
+    // Строка пользователя заблокирована, поэтому список карт полон: новая карта ждет окончания ротации
+    @Transactional
+    public void rotate(Long userId) {
+        User user = userRepository
+                .findByIdForUpdate(userId)
+                .orElseThrow(() -> new NotFoundException("Пользователь не найден. Id: " + userId));
+        byte[] previousWrapped = user.getDataKey();
+        List<Card> cards = cardRepository.findAllByUser(user);
+        SecretKey previous = previousWrapped != null ? dataKey(user) : null;
+
+        SecretKey next = encryptCard.generateDataKey();
+        byte[] wrapped = encryptCard.wrapKey(next);
+        if (previousWrapped == null) {
+            userRepository.initDataKey(userId, wrapped);
+        } else {
+            userRepository.replaceDataKey(userId, previousWrapped, wrapped);
+        }
+
+        // Пишется только номер: баланс карт не перезаписывается
+        for (Card card : cards) {
+            String number = encryptCard.decrypt(card.getNumber(), previous);
+            cardRepository.updateNumber(card.getId(), card.getNumber(), encryptCard.encrypt(number, next));
+        }
+
+        if (previousWrapped != null) {
+            dataKeys.invalidate(ByteBuffer.wrap(previousWrapped));
+        }
+        user.setDataKey(wrapped);
+        log.info("Ключ пользователя заменен. ID: {}, перешифровано карт: {}", userId, cards.size());
+    }
+
+    private SecretKey dataKeyFor(Card card) {
+        return encryptCard.isDataKeyEncrypted(card.getNumber()) ? dataKey(card.getUser()) : null;
+    }
+}
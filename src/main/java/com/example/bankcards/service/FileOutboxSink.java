@@ -0,0 +1,59 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.outbox.OutboxEvent;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Для локального запуска: события дописываются в файл по одному JSON на строку
+@Component
+@ConditionalOnProperty(name = "cards.outbox.sink", havingValue = "file")
+public class FileOutboxSink implements OutboxSink {
+
+    private final ObjectMapper objectMapper;
+    private final BufferedWriter writer;
+
+    public FileOutboxSink(ObjectMapper objectMapper,
+                          @Value("${cards.outbox.file.path:outbox-events.jsonl}") Path path) throws IOException {
+        this.objectMapper = objectMapper;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private record Line(Long id, String type, Long aggregateId, LocalDateTime createdAt, @JsonRawValue String payload) {}
+
+    // Порция записывается целиком и сбрасывается в файл до удаления событий из таблицы
+    @Override
+    public synchronized void deliver(List<OutboxEvent> events) {
+        try {
+            for (OutboxEvent event : events) {
+                writer.write(objectMapper.writeValueAsString(new Line(
+                        event.getId(), event.getEventType().name(), event.getAggregateId(), event.getCreatedAt(), event.getPayload())));
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать события в файл", e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.entity.idempotency.IdempotencyKey;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final Duration retention;
+
+    // Запросы в работе и недавно завершенные: повтор ждет первый запрос или сразу получает его результат
+    private final Cache<String, CompletableFuture<Outcome>> outcomes;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${cards.idempotency.cache-size:100000}") long cacheSize,
+                              @Value("${cards.idempotency.cache-ttl:10m}") Duration cacheTtl,
+                              @Value("${cards.idempotency.retention:24h}") Duration retention) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.retention = retention;
+        this.outcomes = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, outcomes, "cards.idempotency");
+    }
+
+    private record Outcome(String requestHash, UUID operationId) {}
+
+    public TransferResult execute(String email, String key, CardTransferRequest request, Supplier<TransferResult> transfer) {
+        validate(key);
+        String requestHash = hash(request);
+        String cacheKey = email + ':' + key;
+
+        CompletableFuture<Outcome> created = new CompletableFuture<>();
+        CompletableFuture<Outcome> existing = outcomes.asMap().putIfAbsent(cacheKey, created);
+        if (existing != null) {
+            Outcome outcome = await(existing);
+            if (!outcome.requestHash().equals(requestHash)) {
+                throw mismatch();
+            }
+            return new TransferResult(outcome.operationId(), true);
+        }
+
+        try {
+            TransferResult result = transfer.get();
+            created.complete(new Outcome(requestHash, result.operationId()));
+            return result;
+        } catch (RuntimeException e) {
+            // Неудачный запрос не запоминаем: ожидающие получат ту же ошибку, следующий повтор выполнится заново
+            outcomes.asMap().remove(cacheKey, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Вызывается в транзакции перевода до изменения карт; пустой результат - ключ занят этим запросом
+    public Optional<UUID> claim(Long userId, String key, CardTransferRequest request) {
+        String requestHash = hash(request);
+        if (idempotencyKeyRepository.claim(userId, key, requestHash, LocalDateTime.now()) == 1) {
+            return Optional.empty();
+        }
+
+        IdempotencyKey stored = idempotencyKeyRepository
+                .findByUserIdAndKey(userId, key)
+                .orElseThrow(this::inProgress);
+        if (!stored.getRequestHash().equals(requestHash)) {
+            throw mismatch();
+        }
+        // Ключ без операции занят еще не завершенным запросом, например тем же ключом ранее в группе шарда
+        if (stored.getOperationId() == null) {
+            throw inProgress();
+        }
+        return Optional.of(stored.getOperationId());
+    }
+
+    public void complete(Long userId, String key, UUID operationId) {
+        idempotencyKeyRepository.complete(userId, key, operationId);
+    }
+
+    public void release(Long userId, String key) {
+        idempotencyKeyRepository.release(userId, key);
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${cards.idempotency.purge-interval:PT1H}")
+    public void purge() {
+        int deleted = idempotencyKeyRepository.deleteCreatedBefore(LocalDateTime.now().minus(retention));
+        if (deleted > 0) {
+            log.info("Удалено устаревших ключей идемпотентности: {}", deleted);
+        }
+    }
+
+    private Outcome await(CompletableFuture<Outcome> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void validate(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new CardOperationException("Idempotency-Key должен содержать от 1 до " + MAX_KEY_LENGTH + " символов");
+        }
+    }
+
+    private CardOperationException inProgress() {
+        return new CardOperationException("Запрос с этим Idempotency-Key еще выполняется");
+    }
+
+    private CardOperationException mismatch() {
+        return new CardOperationException("Idempotency-Key уже использован для другого перевода");
+    }
+
+    private String hash(CardTransferRequest request) {
+        String value = request.fromCardId() + ":" + request.toCardId() + ":" + request.amount().stripTrailingZeros().toPlainString();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
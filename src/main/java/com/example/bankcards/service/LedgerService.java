@@ -0,0 +1,141 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.event.TransferCompletedEvent;
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.response.card.TransactionPageResponse;
+import com.example.bankcards.dto.response.card.TransactionResponse;
+import com.example.bankcards.entity.ledger.EntryType;
+import com.example.bankcards.entity.ledger.LedgerEntry;
+import com.example.bankcards.entity.ledger.LedgerOperation;
+import com.example.bankcards.entity.outbox.OutboxEventType;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+@Service
+@AllArgsConstructor
+public class LedgerService {
+
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final OutboxService outboxService;
+    private final CardBalanceCache cardBalanceCache;
+
+    // Вызывается в транзакции, изменившей баланс: записи журнала, событие и снимок баланса фиксируются вместе,
+    // кэш балансов обеих карт сбрасывается после коммита
+    public UUID recordTransfer(Long fromCardId, Long toCardId, BigDecimal amount) {
+        UUID operationId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+
+        ledgerEntryRepository.saveAll(List.of(
+                entry(operationId, LedgerOperation.TRANSFER, fromCardId, EntryType.DEBIT, amount, now),
+                entry(operationId, LedgerOperation.TRANSFER, toCardId, EntryType.CREDIT, amount, now)
+        ));
+        outboxService.publish(OutboxEventType.TRANSFER_COMPLETED, new TransferCompletedEvent(operationId, fromCardId, toCardId, amount));
+        cardBalanceCache.evictAll(List.of(fromCardId, toCardId));
+        return operationId;
+    }
+
+    // Все проводки пакета уходят одним saveAll, Hibernate отправляет их пакетами JDBC
+    public List<UUID> recordTransfers(List<CardTransferRequest> transfers) {
+        List<UUID> operationIds = new ArrayList<>(transfers.size());
+        List<LedgerEntry> entries = new ArrayList<>(transfers.size() * 2);
+        List<TransferCompletedEvent> events = new ArrayList<>(transfers.size());
+        Set<Long> cardIds = new HashSet<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (CardTransferRequest transfer : transfers) {
+            UUID operationId = UUID.randomUUID();
+            operationIds.add(operationId);
+            entries.add(entry(operationId, LedgerOperation.TRANSFER, transfer.fromCardId(), EntryType.DEBIT, transfer.amount(), now));
+            entries.add(entry(operationId, LedgerOperation.TRANSFER, transfer.toCardId(), EntryType.CREDIT, transfer.amount(), now));
+            events.add(new TransferCompletedEvent(operationId, transfer.fromCardId(), transfer.toCardId(), transfer.amount()));
+            cardIds.add(transfer.fromCardId());
+            cardIds.add(transfer.toCardId());
+        }
+
+        ledgerEntryRepository.saveAll(entries);
+        outboxService.publishAll(OutboxEventType.TRANSFER_COMPLETED, events);
+        cardBalanceCache.evictAll(cardIds);
+        return operationIds;
+    }
+
+    public UUID recordIssue(Long cardId, BigDecimal amount) {
+        UUID operationId = UUID.randomUUID();
+
+        ledgerEntryRepository.save(entry(operationId, LedgerOperation.ISSUE, cardId, EntryType.CREDIT, amount, LocalDateTime.now()));
+        cardBalanceCache.evict(cardId);
+        return operationId;
+    }
+
+    // Курсор - позиция последней записи страницы (created_at, id); COUNT не выполняется, признак следующей страницы - лишняя запись
+    public TransactionPageResponse history(Long cardId, String cursor, int size) {
+        List<LedgerEntry> entries;
+        if (cursor == null) {
+            entries = ledgerEntryRepository.findByCardIdOrderByCreatedAtDescIdDesc(cardId, Limit.of(size + 1));
+        } else {
+            Cursor position = Cursor.decode(cursor);
+            entries = ledgerEntryRepository.findPageBefore(cardId, position.createdAt(), position.id(), size + 1);
+        }
+
+        boolean hasNext = entries.size() > size;
+        List<LedgerEntry> page = hasNext ? entries.subList(0, size) : entries;
+        String nextCursor = null;
+        if (hasNext) {
+            LedgerEntry last = page.get(page.size() - 1);
+            nextCursor = new Cursor(last.getCreatedAt(), last.getId()).encode();
+        }
+
+        List<TransactionResponse> items = page.stream()
+                .map(entry -> new TransactionResponse(
+                        entry.getId(),
+                        entry.getOperationId(),
+                        entry.getOperation(),
+                        entry.getType(),
+                        entry.getAmount(),
+                        entry.getCreatedAt()))
+                .toList();
+        return new TransactionPageResponse(items, nextCursor);
+    }
+
+    private record Cursor(LocalDateTime createdAt, Long id) {
+
+        private String encode() {
+            String value = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static Cursor decode(String cursor) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = value.indexOf('|');
+                return new Cursor(LocalDateTime.parse(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new CardOperationException("Некорректный курсор");
+            }
+        }
+    }
+
+    private LedgerEntry entry(UUID operationId, LedgerOperation operation, Long cardId,
+                              EntryType type, BigDecimal amount, LocalDateTime createdAt) {
+        return LedgerEntry.builder()
+                .operationId(operationId)
+                .operation(operation)
+                .cardId(cardId)
+                .type(type)
+                .amount(amount)
+                .createdAt(createdAt)
+                .build();
+    }
+}
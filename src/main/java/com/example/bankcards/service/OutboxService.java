@@ -0,0 +1,55 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.event.CardEvent;
+import com.example.bankcards.entity.outbox.OutboxEventType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Только в транзакции изменения: событие фиксируется или откатывается вместе с ним
+@Service
+@AllArgsConstructor
+@Transactional(propagation = Propagation.MANDATORY)
+public class OutboxService {
+
+    private static final String INSERT =
+            "insert into outbox_events (event_type, aggregate_id, payload, created_at) values (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public void publish(OutboxEventType type, CardEvent event) {
+        publishAll(type, List.of(event));
+    }
+
+    // Вставка через JDBC-пакет: с IDENTITY Hibernate отправлял бы события пакетного перевода по одному
+    public void publishAll(OutboxEventType type, List<? extends CardEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (CardEvent event : events) {
+            rows.add(new Object[]{type.name(), event.cardId(), serialize(event), now});
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows);
+    }
+
+    private String serialize(CardEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать событие " + event.getClass().getSimpleName(), e);
+        }
+    }
+}
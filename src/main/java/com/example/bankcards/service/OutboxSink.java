@@ -0,0 +1,13 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.outbox.OutboxEvent;
+
+import java.util.List;
+
+// Получатель событий outbox. Вызывается в транзакции ретранслятора: исключение откатывает удаление,
+// и порция будет доставлена повторно, поэтому получатель должен отбрасывать повторы по ID события
+public interface OutboxSink {
+
+    void deliver(List<OutboxEvent> events);
+
+}
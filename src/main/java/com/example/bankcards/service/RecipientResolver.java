@@ -0,0 +1,46 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardNumberHash;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+@Service
+public class RecipientResolver {
+
+    private final CardRepository cardRepository;
+    private final CardNumberHash cardNumberHash;
+
+    // Ключ - HMAC номера, сами номера в памяти не хранятся. Кэшируется только ID карты:
+    // статус получателя проверяется при зачислении, поэтому заблокированная карта не получит денег из кэша
+    private final Cache<String, Long> recipients;
+
+    public RecipientResolver(CardRepository cardRepository,
+                             CardNumberHash cardNumberHash,
+                             MeterRegistry meterRegistry,
+                             @Value("${cards.transfer.recipients.cache-size:10000}") long cacheSize,
+                             @Value("${cards.transfer.recipients.cache-ttl:1m}") Duration cacheTtl) {
+        this.cardRepository = cardRepository;
+        this.cardNumberHash = cardNumberHash;
+        this.recipients = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recipients, "cards.recipients");
+    }
+
+    // Поиск по уникальному индексу number_hash без расшифровки номеров; отсутствие карты не кэшируется
+    public Long resolve(String number) {
+        return recipients.get(cardNumberHash.hash(number), hash -> cardRepository
+                .findIdByNumberHash(hash)
+                .orElseThrow(() -> new NotFoundException("Карта получателя не найдена")));
+    }
+}
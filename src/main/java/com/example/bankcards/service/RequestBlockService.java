@@ -1,9 +1,11 @@
 package com.example.bankcards.service;
 
 
+import com.example.bankcards.dto.event.CardStatusChangedEvent;
 import com.example.bankcards.dto.response.block.BlockResponse;
 import com.example.bankcards.entity.card.Card;
 import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.outbox.OutboxEventType;
 import com.example.bankcards.entity.request.RequestBlock;
 import com.example.bankcards.entity.request.RequestStatus;
 import com.example.bankcards.entity.user.User;
@@ -26,6 +28,7 @@ public class RequestBlockService {
     private final RequestBlockRepository requestBlockRepository;
     private final CardRepository cardRepository;
     private final UserService userService;
+    private final OutboxService outboxService;
 
     @Transactional(readOnly = true)
     public Page<BlockResponse> findAll(Pageable pageable) {
@@ -78,9 +81,15 @@ public class RequestBlockService {
                 .orElseThrow(() -> new NotFoundException("Не найден запрос на блокировку"));
 
         Card card = requestBlock.getCard();
+        CardStatus previous = card.getStatus();
         card.setStatus(CardStatus.BLOCKED);
         cardRepository.save(card);
 
+        if (previous != CardStatus.BLOCKED) {
+            outboxService.publish(OutboxEventType.CARD_STATUS_CHANGED,
+                    new CardStatusChangedEvent(card.getId(), card.getUser().getId(), previous, CardStatus.BLOCKED));
+        }
+
         requestBlock.setStatus(RequestStatus.COMPLETED);
         requestBlockRepository.save(requestBlock);
     }
@@ -0,0 +1,116 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Переводы с одной карты всегда попадают в один шард и выполняются его единственным потоком по очереди,
+// накопленные в очереди переводы фиксируются одной транзакцией
+@Slf4j
+class ShardedTransferPipeline {
+
+    private final List<BlockingQueue<Submission>> queues;
+    private final List<Thread> workers;
+    private final int groupSize;
+    private final Consumer<List<Submission>> groupCommit;
+    private final DistributionSummary groups;
+    private volatile boolean running = true;
+
+    record Submission(Long userId, CardTransferRequest request, String idempotencyKey, CompletableFuture<TransferResult> result) {}
+
+    ShardedTransferPipeline(TransferProperties.Sharding sharding,
+                            Consumer<List<Submission>> groupCommit,
+                            MeterRegistry meterRegistry) {
+        this.groupSize = sharding.groupSize();
+        this.groupCommit = groupCommit;
+        this.groups = meterRegistry.summary("cards.transfer.shard.group");
+        this.queues = new ArrayList<>(sharding.shards());
+        this.workers = new ArrayList<>(sharding.shards());
+
+        for (int i = 0; i < sharding.shards(); i++) {
+            BlockingQueue<Submission> queue = new ArrayBlockingQueue<>(sharding.queueSize());
+            queues.add(queue);
+            Gauge.builder("cards.transfer.shard.queue", queue, Collection::size)
+                    .tag("shard", String.valueOf(i))
+                    .register(meterRegistry);
+            workers.add(Thread.ofPlatform().daemon().name("transfer-shard-" + i).start(() -> run(queue)));
+        }
+    }
+
+    CompletableFuture<TransferResult> submit(Long userId, CardTransferRequest request, String idempotencyKey) {
+        if (!running) {
+            throw new CannotAcquireLockException("Прием переводов остановлен");
+        }
+
+        Submission submission = new Submission(userId, request, idempotencyKey, new CompletableFuture<>());
+        if (!queues.get(shard(request.fromCardId())).offer(submission)) {
+            throw new CannotAcquireLockException("Очередь переводов переполнена, повторите попытку позже");
+        }
+        return submission.result();
+    }
+
+    int shard(Long cardId) {
+        long hash = cardId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(hash ^ (hash >>> 32), (long) queues.size());
+    }
+
+    // Потоки дорабатывают уже принятые переводы, оставшиеся после таймаута завершаются ошибкой
+    void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        CannotAcquireLockException stopped = new CannotAcquireLockException("Прием переводов остановлен");
+        for (BlockingQueue<Submission> queue : queues) {
+            Submission submission;
+            while ((submission = queue.poll()) != null) {
+                submission.result().completeExceptionally(stopped);
+            }
+        }
+    }
+
+    private void run(BlockingQueue<Submission> queue) {
+        List<Submission> group = new ArrayList<>(groupSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            // Пока шард фиксирует группу, следующие переводы копятся в очереди и уходят следующей группой
+            queue.drainTo(group, groupSize - 1);
+            groups.record(group.size());
+            try {
+                groupCommit.accept(group);
+            } catch (RuntimeException e) {
+                log.error("Ошибка при фиксации группы переводов", e);
+                group.forEach(submission -> submission.result().completeExceptionally(e));
+            }
+            group.clear();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.bankcards.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+// Кольцо бакетов фиксированной ширины: сумма за окно считается по всем бакетам,
+// поэтому окно «скользит» с точностью до одного бакета. Не потокобезопасно
+final class SlidingWindow {
+
+    private final long bucketMillis;
+    private final long[] values;
+    private long head = Long.MIN_VALUE;
+
+    SlidingWindow(int buckets, Duration bucketWidth) {
+        this.bucketMillis = bucketWidth.toMillis();
+        this.values = new long[buckets];
+    }
+
+    void add(long atMillis, long value) {
+        long bucket = atMillis / bucketMillis;
+        advance(bucket);
+        if (bucket <= head - values.length) {
+            return;
+        }
+        values[(int) Math.floorMod(bucket, (long) values.length)] += value;
+    }
+
+    long sum(long nowMillis) {
+        advance(nowMillis / bucketMillis);
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    // Бакеты, вышедшие из окна, обнуляются при движении головы, а не по таймеру
+    private void advance(long bucket) {
+        if (bucket <= head) {
+            return;
+        }
+        if (head == Long.MIN_VALUE || bucket - head >= values.length) {
+            Arrays.fill(values, 0);
+        } else {
+            for (long b = head + 1; b <= bucket; b++) {
+                values[(int) Math.floorMod(b, (long) values.length)] = 0;
+            }
+        }
+        head = bucket;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.request.card.StandingOrderRequest;
+import com.example.bankcards.dto.response.card.StandingOrderResponse;
+import com.example.bankcards.entity.card.Card;
+import com.example.bankcards.entity.standing.StandingOrder;
+import com.example.bankcards.entity.standing.StandingOrderPeriod;
+import com.example.bankcards.entity.standing.StandingOrderStatus;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.exception.TransferLimitException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.StandingOrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Slf4j
+@Service
+public class StandingOrderService {
+
+    // Ключ идемпотентности исполнения: повтор после истечения аренды не спишет деньги второй раз
+    private static final String KEY_PREFIX = "standing-order:";
+    private static final int DEFAULT_PRIORITY = 5;
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final StandingOrderRepository standingOrderRepository;
+    private final CardRepository cardRepository;
+    private final TransferService transferService;
+    private final UserService userService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration lease;
+    private final Duration retryDelay;
+    private final int maxAttempts;
+
+    private final Counter completed;
+    private final Counter rejected;
+    private final Counter postponed;
+    private final Timer lag;
+
+    public StandingOrderService(StandingOrderRepository standingOrderRepository,
+                                CardRepository cardRepository,
+                                TransferService transferService,
+                                UserService userService,
+                                TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${cards.transfer.scheduled.lease:1m}") Duration lease,
+                                @Value("${cards.transfer.scheduled.retry-delay:1m}") Duration retryDelay,
+                                @Value("${cards.transfer.scheduled.max-attempts:5}") int maxAttempts) {
+        this.standingOrderRepository = standingOrderRepository;
+        this.cardRepository = cardRepository;
+        this.transferService = transferService;
+        this.userService = userService;
+        this.transactionTemplate = transactionTemplate;
+        this.lease = lease;
+        this.retryDelay = retryDelay;
+        this.maxAttempts = maxAttempts;
+
+        this.completed = meterRegistry.counter("cards.transfer.scheduled.runs", "result", "completed");
+        this.rejected = meterRegistry.counter("cards.transfer.scheduled.runs", "result", "rejected");
+        this.postponed = meterRegistry.counter("cards.transfer.scheduled.runs", "result", "postponed");
+        this.lag = meterRegistry.timer("cards.transfer.scheduled.lag");
+    }
+
+    @Transactional
+    public StandingOrderResponse create(String email, StandingOrderRequest request) {
+        transferService.validate(new CardTransferRequest(request.fromCardId(), request.toCardId(), request.amount()));
+        User user = userService.findByEmail(email);
+        checkOwner(user, request.fromCardId());
+        checkOwner(user, request.toCardId());
+
+        // Регулярный перевод с датой начала в прошлом начинается с ближайшего будущего исполнения, разовый выполняется сразу
+        LocalDateTime now = LocalDateTime.now();
+        int runs = request.period() == StandingOrderPeriod.ONCE ? 0 : skipPast(request.period(), request.startAt(), 0, now);
+
+        StandingOrder order = standingOrderRepository.save(StandingOrder.builder()
+                .userId(user.getId())
+                .fromCardId(request.fromCardId())
+                .toCardId(request.toCardId())
+                .amount(request.amount())
+                .period(request.period())
+                .priority(request.priority() != null ? request.priority() : DEFAULT_PRIORITY)
+                .startAt(request.startAt())
+                .nextRunAt(request.period().occurrence(request.startAt(), runs))
+                .runs(runs)
+                .status(StandingOrderStatus.ACTIVE)
+                .createdAt(now)
+                .build());
+        return response(order);
+    }
+
+    @Transactional(readOnly = true)
+    public Page<StandingOrderResponse> findOrders(String email, Pageable pageable) {
+        User user = userService.findByEmail(email);
+        return standingOrderRepository.findByUserId(user.getId(), pageable).map(this::response);
+    }
+
+    @Transactional
+    public StandingOrderResponse cancel(String email, Long id) {
+        User user = userService.findByEmail(email);
+        StandingOrder order = standingOrderRepository
+                .findByIdAndUserId(id, user.getId())
+                .orElseThrow(() -> new NotFoundException("Регулярный перевод не найден. ID: " + id));
+
+        if (standingOrderRepository.cancel(id, StandingOrderStatus.ACTIVE, StandingOrderStatus.CANCELLED) == 0) {
+            throw new CardOperationException("Регулярный перевод уже завершен");
+        }
+        order.setStatus(StandingOrderStatus.CANCELLED);
+        order.setNextRunAt(null);
+        return response(order);
+    }
+
+    public List<StandingOrder> claim(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        return transactionTemplate.execute(status -> standingOrderRepository.claim(limit, now, now.plus(lease)));
+    }
+
+    // Выполняет наступившее исполнение по правилам обычного перевода между своими картами
+    public void execute(StandingOrder order) {
+        LocalDateTime now = LocalDateTime.now();
+        if (order.getAttempts() > maxAttempts) {
+            advance(order, null, "Перевод не выполнен за " + maxAttempts + " попыток", now);
+            return;
+        }
+
+        lag.record(Duration.between(order.getNextRunAt(), now));
+        CardTransferRequest request = new CardTransferRequest(order.getFromCardId(), order.getToCardId(), order.getAmount());
+        try {
+            TransferResult result = transferService.transfer(order.getUserId(), request,
+                    KEY_PREFIX + order.getId() + ":" + order.getRuns());
+            advance(order, result.operationId(), null, now);
+        } catch (TransferLimitException e) {
+            // Лимит освобождается со временем: исполнение откладывается, а не пропускается, попытки сбрасываются
+            transactionTemplate.executeWithoutResult(tx ->
+                    standingOrderRepository.postponeForLimit(order.getId(), now.plus(retryDelay), truncate(e.getMessage())));
+            postponed.increment();
+        } catch (CardOperationException | NotFoundException e) {
+            advance(order, null, e.getMessage(), now);
+        } catch (RuntimeException e) {
+            log.warn("Регулярный перевод будет повторен. ID: {}, попытка: {}", order.getId(), order.getAttempts(), e);
+            postpone(order, null, now);
+        }
+    }
+
+    // Пропущенные за время простоя исполнения не наверстываются пачкой: следующее назначается не раньше текущего момента
+    private void advance(StandingOrder order, UUID operationId, String error, LocalDateTime now) {
+        int runs = skipPast(order.getPeriod(), order.getStartAt(), order.getRuns() + 1, now);
+        LocalDateTime next = order.getPeriod().occurrence(order.getStartAt(), runs);
+        StandingOrderStatus status = next != null
+                ? StandingOrderStatus.ACTIVE
+                : operationId != null ? StandingOrderStatus.COMPLETED : StandingOrderStatus.FAILED;
+
+        transactionTemplate.executeWithoutResult(tx -> standingOrderRepository.advance(order.getId(), StandingOrderStatus.ACTIVE,
+                status, runs, next, operationId, truncate(error), now));
+        (operationId != null ? completed : rejected).increment();
+    }
+
+    private void postpone(StandingOrder order, String error, LocalDateTime now) {
+        transactionTemplate.executeWithoutResult(tx ->
+                standingOrderRepository.postpone(order.getId(), now.plus(retryDelay), truncate(error)));
+        postponed.increment();
+    }
+
+    private static int skipPast(StandingOrderPeriod period, LocalDateTime startAt, int runs, LocalDateTime now) {
+        LocalDateTime at = period.occurrence(startAt, runs);
+        while (at != null && at.isBefore(now)) {
+            at = period.occurrence(startAt, ++runs);
+        }
+        return runs;
+    }
+
+    private void checkOwner(User user, Long cardId) {
+        Card card = cardRepository.findById(cardId).orElseThrow(() -> new NotFoundException("Карта не найдена. ID: " + cardId));
+        if (!card.getUser().getId().equals(user.getId())) {
+            throw new CardOperationException("Карта вам не принадлежит");
+        }
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    private StandingOrderResponse response(StandingOrder order) {
+        return new StandingOrderResponse(
+                order.getId(),
+                order.getStatus(),
+                order.getFromCardId(),
+                order.getToCardId(),
+                order.getAmount(),
+                order.getPeriod(),
+                order.getPriority(),
+                order.getNextRunAt(),
+                order.getLastRunAt(),
+                order.getLastOperationId(),
+                order.getLastError(),
+                order.getCreatedAt());
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.bankcards.service;
+
+public enum TransferMode {
+    ATOMIC,
+    PESSIMISTIC,
+    OPTIMISTIC,
+    SHARDED
+}
@@ -0,0 +1,24 @@
+package com.example.bankcards.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "cards.transfer")
+public record TransferProperties(
+        @DefaultValue("ATOMIC") TransferMode mode,
+        @DefaultValue("2s") Duration lockTimeout,
+        @DefaultValue("5") int maxAttempts,
+        @DefaultValue("5ms") Duration backoff,
+        @DefaultValue("100ms") Duration maxBackoff,
+        @DefaultValue Sharding sharding
+) {
+
+    // Используется только в режиме SHARDED
+    public record Sharding(
+            @DefaultValue("8") int shards,
+            @DefaultValue("4096") int queueSize,
+            @DefaultValue("256") int groupSize
+    ) {}
+}
@@ -0,0 +1,212 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.response.card.TransferOrderResponse;
+import com.example.bankcards.entity.transfer.TransferOrder;
+import com.example.bankcards.entity.transfer.TransferOrderStatus;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.TransferOrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Slf4j
+@Service
+public class TransferQueueService {
+
+    // Ключ идемпотентности перевода из очереди: повторная обработка после истечения аренды не спишет деньги дважды
+    private static final String KEY_PREFIX = "transfer-order:";
+    private static final int MAX_ERROR_LENGTH = 255;
+    private static final Duration POLL_SLICE = Duration.ofSeconds(1);
+
+    private final TransferOrderRepository transferOrderRepository;
+    private final TransferService transferService;
+    private final UserService userService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration lease;
+    private final Duration retryDelay;
+    private final int maxAttempts;
+    private final Duration retention;
+
+    private final Counter submitted;
+    private final Counter completed;
+    private final Counter rejected;
+    private final Counter released;
+    private final Timer latency;
+
+    // Ожидающие long-poll запросы этого узла: воркер будит их сразу после завершения перевода
+    private final Map<UUID, CompletableFuture<Void>> waiters = new ConcurrentHashMap<>();
+
+    public TransferQueueService(TransferOrderRepository transferOrderRepository,
+                                TransferService transferService,
+                                UserService userService,
+                                TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${cards.transfer.async.lease:30s}") Duration lease,
+                                @Value("${cards.transfer.async.retry-delay:1s}") Duration retryDelay,
+                                @Value("${cards.transfer.async.max-attempts:5}") int maxAttempts,
+                                @Value("${cards.transfer.async.retention:7d}") Duration retention) {
+        this.transferOrderRepository = transferOrderRepository;
+        this.transferService = transferService;
+        this.userService = userService;
+        this.transactionTemplate = transactionTemplate;
+        this.lease = lease;
+        this.retryDelay = retryDelay;
+        this.maxAttempts = maxAttempts;
+        this.retention = retention;
+
+        this.submitted = meterRegistry.counter("cards.transfer.queue.orders", "result", "submitted");
+        this.completed = meterRegistry.counter("cards.transfer.queue.orders", "result", "completed");
+        this.rejected = meterRegistry.counter("cards.transfer.queue.orders", "result", "rejected");
+        this.released = meterRegistry.counter("cards.transfer.queue.orders", "result", "released");
+        this.latency = meterRegistry.timer("cards.transfer.queue.latency");
+    }
+
+    // Проверяются только параметры перевода, карты не блокируются: запрос держит соединение на одну вставку
+    @Transactional
+    public TransferOrderResponse submit(String email, CardTransferRequest request) {
+        transferService.validate(request);
+        User user = userService.findByEmail(email);
+
+        LocalDateTime now = LocalDateTime.now();
+        TransferOrder order = transferOrderRepository.save(TransferOrder.builder()
+                .userId(user.getId())
+                .fromCardId(request.fromCardId())
+                .toCardId(request.toCardId())
+                .amount(request.amount())
+                .status(TransferOrderStatus.PENDING)
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+        submitted.increment();
+        return response(order);
+    }
+
+    // Без ожидания возвращает текущий статус, иначе ждет завершения перевода не дольше wait
+    public TransferOrderResponse findOrder(String email, UUID id, Duration wait) {
+        User user = userService.findByEmail(email);
+        TransferOrder order = findOrder(user, id);
+
+        long deadline = System.nanoTime() + wait.toNanos();
+        try {
+            while (!isFinished(order)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+
+                // Перевод может обрабатываться на другом узле: статус перечитывается не реже раза в секунду
+                CompletableFuture<Void> waiter = waiters.computeIfAbsent(id, key -> new CompletableFuture<>());
+                try {
+                    waiter.get(Math.min(remaining, POLL_SLICE.toNanos()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    // перечитываем статус
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                order = findOrder(user, id);
+            }
+        } finally {
+            // Другие ожидающие этого перевода дочитают статус по таймауту своей секунды
+            waiters.remove(id);
+        }
+        return response(order);
+    }
+
+    public List<TransferOrder> claim(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        return transactionTemplate.execute(status -> transferOrderRepository.claim(limit, now, now.plus(lease)));
+    }
+
+    public void process(TransferOrder order) {
+        if (order.getAttempts() > maxAttempts) {
+            finish(order, TransferOrderStatus.REJECTED, null, "Перевод не выполнен за " + maxAttempts + " попыток");
+            return;
+        }
+
+        CardTransferRequest request = new CardTransferRequest(order.getFromCardId(), order.getToCardId(), order.getAmount());
+        try {
+            TransferResult result = transferService.transfer(order.getUserId(), request, KEY_PREFIX + order.getId());
+            finish(order, TransferOrderStatus.COMPLETED, result.operationId(), null);
+        } catch (CardOperationException | NotFoundException e) {
+            finish(order, TransferOrderStatus.REJECTED, null, e.getMessage());
+        } catch (RuntimeException e) {
+            // Временная ошибка (таймаут блокировки, конфликт версий): перевод возвращается в очередь с задержкой,
+            // иначе он сразу оказался бы первым в очереди и израсходовал попытки за один всплеск конкуренции
+            log.warn("Перевод из очереди будет повторен. ID: {}, попытка: {}", order.getId(), order.getAttempts(), e);
+            released.increment();
+            LocalDateTime now = LocalDateTime.now();
+            transactionTemplate.executeWithoutResult(status ->
+                    transferOrderRepository.release(order.getId(), now.plus(retryDelay), now));
+        }
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${cards.transfer.async.purge-interval:PT1H}")
+    public void purge() {
+        int deleted = transferOrderRepository.deleteBefore(
+                EnumSet.of(TransferOrderStatus.COMPLETED, TransferOrderStatus.REJECTED), LocalDateTime.now().minus(retention));
+        if (deleted > 0) {
+            log.info("Удалено завершенных переводов из очереди: {}", deleted);
+        }
+    }
+
+    private void finish(TransferOrder order, TransferOrderStatus status, UUID operationId, String error) {
+        String message = error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+        transactionTemplate.executeWithoutResult(tx ->
+                transferOrderRepository.updateStatus(order.getId(), status, operationId, message, LocalDateTime.now()));
+
+        (status == TransferOrderStatus.COMPLETED ? completed : rejected).increment();
+        latency.record(Duration.between(order.getCreatedAt(), LocalDateTime.now()));
+
+        CompletableFuture<Void> waiter = waiters.remove(order.getId());
+        if (waiter != null) {
+            waiter.complete(null);
+        }
+    }
+
+    private TransferOrder findOrder(User user, UUID id) {
+        return transferOrderRepository
+                .findByIdAndUserId(id, user.getId())
+                .orElseThrow(() -> new NotFoundException("Перевод не найден. ID: " + id));
+    }
+
+    private boolean isFinished(TransferOrder order) {
+        return order.getStatus() == TransferOrderStatus.COMPLETED || order.getStatus() == TransferOrderStatus.REJECTED;
+    }
+
+    private TransferOrderResponse response(TransferOrder order) {
+        return new TransferOrderResponse(
+                order.getId(),
+                order.getStatus(),
+                order.getFromCardId(),
+                order.getToCardId(),
+                order.getAmount(),
+                order.getOperationId(),
+                order.getError(),
+                order.getCreatedAt(),
+                order.getUpdatedAt()
+        );
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.bankcards.service;
+
+import java.util.UUID;
+
+// replayed - результат взят из сохраненного ответа по Idempotency-Key, балансы не изменялись
+public record TransferResult(UUID operationId, boolean replayed) {}
@@ -0,0 +1,527 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.response.card.BatchTransferItemResponse;
+import com.example.bankcards.entity.card.Card;
+import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.exception.TransferLimitException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.Money;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+@Slf4j
+@Service
+public class TransferService {
+
+    private final CardRepository cardRepository;
+    private final UserService userService;
+    private final LedgerService ledgerService;
+    private final IdempotencyService idempotencyService;
+    private final CardLockManager cardLockManager;
+    private final VelocityLimiter velocityLimiter;
+    private final TransactionTemplate transactionTemplate;
+    private final TransferProperties properties;
+
+    private final Counter completed;
+    private final Counter rejected;
+    private final Counter aborted;
+    private final Counter replayed;
+    private final Counter retries;
+    private final Counter batchCompleted;
+    private final Counter batchRejected;
+    private final ShardedTransferPipeline pipeline;
+
+    public TransferService(CardRepository cardRepository,
+                           UserService userService,
+                           LedgerService ledgerService,
+                           IdempotencyService idempotencyService,
+                           CardLockManager cardLockManager,
+                           VelocityLimiter velocityLimiter,
+                           TransactionTemplate transactionTemplate,
+                           TransferProperties properties,
+                           MeterRegistry meterRegistry) {
+        this.cardRepository = cardRepository;
+        this.userService = userService;
+        this.ledgerService = ledgerService;
+        this.idempotencyService = idempotencyService;
+        this.cardLockManager = cardLockManager;
+        this.velocityLimiter = velocityLimiter;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = properties;
+
+        String mode = properties.mode().name().toLowerCase();
+        this.completed = meterRegistry.counter("cards.transfer.results", "mode", mode, "result", "completed");
+        this.rejected = meterRegistry.counter("cards.transfer.results", "mode", mode, "result", "rejected");
+        this.aborted = meterRegistry.counter("cards.transfer.results", "mode", mode, "result", "aborted");
+        this.replayed = meterRegistry.counter("cards.transfer.results", "mode", mode, "result", "replayed");
+        this.retries = meterRegistry.counter("cards.transfer.retries", "mode", mode);
+        this.batchCompleted = meterRegistry.counter("cards.transfer.batch.items", "result", "completed");
+        this.batchRejected = meterRegistry.counter("cards.transfer.batch.items", "result", "rejected");
+        this.pipeline = properties.mode() == TransferMode.SHARDED
+                ? new ShardedTransferPipeline(properties.sharding(), this::commitGroup, meterRegistry)
+                : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    public UUID transfer(String email, CardTransferRequest request) {
+        return transfer(email, request, null).operationId();
+    }
+
+    // С ключом идемпотентности ключ занимается в той же транзакции, что и перевод, до изменения карт
+    public TransferResult transfer(String email, CardTransferRequest request, String idempotencyKey) {
+        return transfer(() -> userService.findByEmail(email), request, idempotencyKey);
+    }
+
+    // Перевод из очереди: владелец известен по ID
+    public TransferResult transfer(Long userId, CardTransferRequest request, String idempotencyKey) {
+        return transfer(() -> userService.findUserById(userId), request, idempotencyKey);
+    }
+
+    private TransferResult transfer(Supplier<User> owner, CardTransferRequest request, String idempotencyKey) {
+        validate(request);
+
+        return counted(() -> switch (properties.mode()) {
+            case ATOMIC -> withLocks(request, () -> inTransaction(owner, request, idempotencyKey, this::transferAtomic));
+            case PESSIMISTIC -> withLocks(request, () -> inTransaction(owner, request, idempotencyKey, this::transferLocked));
+            case OPTIMISTIC -> withLocks(request, () -> transferOptimistic(owner, request, idempotencyKey));
+            // Шард сам выполняет переводы с одной карты последовательно, блокировки в памяти не нужны
+            case SHARDED -> transferSharded(owner, request, idempotencyKey);
+        });
+    }
+
+    // Перевод на карту другого клиента всегда выполняется условными UPDATE, как в ATOMIC: карты не загружаются,
+    // поэтому задержка та же, что у перевода между своими картами
+    public TransferResult transferToCustomer(String email, CardTransferRequest request, String idempotencyKey) {
+        validate(request);
+
+        return counted(() -> withLocks(request,
+                () -> inTransaction(() -> userService.findByEmail(email), request, idempotencyKey, this::transferToCustomer)));
+    }
+
+    private TransferResult counted(Supplier<TransferResult> transfer) {
+        try {
+            TransferResult result = transfer.get();
+            (result.replayed() ? replayed : completed).increment();
+            return result;
+        } catch (CardOperationException | NotFoundException e) {
+            rejected.increment();
+            throw e;
+        } catch (RuntimeException e) {
+            aborted.increment();
+            throw e;
+        }
+    }
+
+    // Блокировки в памяти берутся до транзакции: ожидающий перевод не занимает соединение
+    private TransferResult withLocks(CardTransferRequest request, Supplier<TransferResult> transfer) {
+        return cardLockManager.withLocks(List.of(request.fromCardId(), request.toCardId()), transfer);
+    }
+
+    private TransferResult transferSharded(Supplier<User> owner, CardTransferRequest request, String idempotencyKey) {
+        User user = owner.get();
+        VelocityLimiter.Reservation reservation = velocityLimiter.acquire(user, request.fromCardId(), Money.of(request.amount()));
+        try {
+            TransferResult result = pipeline.submit(user.getId(), request, idempotencyKey).join();
+            if (result.replayed()) {
+                velocityLimiter.release(reservation);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            velocityLimiter.release(reservation);
+            if (e instanceof CompletionException && e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Группа шарда фиксируется одной транзакцией, результат каждого перевода отдается только после коммита
+    private void commitGroup(List<ShardedTransferPipeline.Submission> group) {
+        TransferResult[] results = new TransferResult[group.size()];
+        RuntimeException[] errors = new RuntimeException[group.size()];
+        try {
+            transactionTemplate.executeWithoutResult(status -> applyGroup(group, results, errors));
+        } catch (RuntimeException e) {
+            group.forEach(submission -> submission.result().completeExceptionally(e));
+            return;
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            if (errors[i] != null) {
+                group.get(i).result().completeExceptionally(errors[i]);
+            } else {
+                group.get(i).result().complete(results[i]);
+            }
+        }
+    }
+
+    private void applyGroup(List<ShardedTransferPipeline.Submission> group, TransferResult[] results, RuntimeException[] errors) {
+        // Ключи идемпотентности занимаются до блокировки карт, в том же порядке, что и при обычном переводе
+        Set<Long> cardIds = new TreeSet<>();
+        for (int i = 0; i < group.size(); i++) {
+            ShardedTransferPipeline.Submission submission = group.get(i);
+            cardIds.add(submission.request().fromCardId());
+            cardIds.add(submission.request().toCardId());
+            if (submission.idempotencyKey() == null) {
+                continue;
+            }
+
+            try {
+                Optional<UUID> stored = idempotencyService.claim(submission.userId(), submission.idempotencyKey(), submission.request());
+                if (stored.isPresent()) {
+                    results[i] = new TransferResult(stored.get(), true);
+                }
+            } catch (CardOperationException e) {
+                errors[i] = e;
+            }
+        }
+
+        Map<Long, Card> cards = lockCards(cardIds);
+        List<CardTransferRequest> applied = new ArrayList<>();
+        List<Integer> appliedIndexes = new ArrayList<>();
+        for (int i = 0; i < group.size(); i++) {
+            if (results[i] != null || errors[i] != null) {
+                continue;
+            }
+
+            ShardedTransferPipeline.Submission submission = group.get(i);
+            CardTransferRequest transfer = submission.request();
+            try {
+                move(submission.userId(), batchCard(cards, transfer.fromCardId()), batchCard(cards, transfer.toCardId()),
+                        Money.of(transfer.amount()));
+                applied.add(transfer);
+                appliedIndexes.add(i);
+            } catch (CardOperationException | NotFoundException e) {
+                errors[i] = e;
+                // Группа фиксируется вместе с остальными переводами: ключ отклоненного освобождается для повтора
+                if (submission.idempotencyKey() != null) {
+                    idempotencyService.release(submission.userId(), submission.idempotencyKey());
+                }
+            }
+        }
+
+        cardRepository.saveAll(cards.values());
+        List<UUID> operationIds = ledgerService.recordTransfers(applied);
+        for (int i = 0; i < appliedIndexes.size(); i++) {
+            int index = appliedIndexes.get(i);
+            ShardedTransferPipeline.Submission submission = group.get(index);
+            results[index] = new TransferResult(operationIds.get(i), false);
+            if (submission.idempotencyKey() != null) {
+                idempotencyService.complete(submission.userId(), submission.idempotencyKey(), operationIds.get(i));
+            }
+        }
+    }
+
+    // Пакет всегда выполняется с блокировками независимо от режима: все карты загружаются и блокируются одним запросом.
+    // Блокировки в памяти пакет не берет: большой пакет занял бы все полосы и остановил остальные переводы узла,
+    // согласованность обеспечивают блокировки строк
+    public List<BatchTransferItemResponse> transferBatch(String email, List<CardTransferRequest> transfers, BatchTransferMode mode) {
+        List<BatchTransferItemResponse> items;
+        try {
+            Set<Long> cardIds = new TreeSet<>();
+            for (CardTransferRequest transfer : transfers) {
+                cardIds.add(transfer.fromCardId());
+                cardIds.add(transfer.toCardId());
+            }
+            items = transactionTemplate.execute(status -> applyBatch(email, cardIds, transfers, mode));
+        } catch (CardOperationException | NotFoundException e) {
+            batchRejected.increment(transfers.size());
+            throw e;
+        }
+
+        long done = items.stream().filter(item -> item.status() == BatchItemStatus.COMPLETED).count();
+        batchCompleted.increment(done);
+        batchRejected.increment(items.size() - done);
+        return items;
+    }
+
+    private List<BatchTransferItemResponse> applyBatch(String email, Set<Long> cardIds,
+                                                       List<CardTransferRequest> transfers, BatchTransferMode mode) {
+        User user = userService.findByEmail(email);
+        Map<Long, Card> cards = lockCards(cardIds);
+
+        BatchTransferItemResponse[] items = new BatchTransferItemResponse[transfers.size()];
+        List<CardTransferRequest> applied = new ArrayList<>();
+        List<Integer> appliedIndexes = new ArrayList<>();
+        List<VelocityLimiter.Reservation> reservations = new ArrayList<>();
+
+        List<UUID> operationIds;
+        try {
+            // Переводы применяются по порядку: следующий видит балансы после предыдущих
+            for (int i = 0; i < transfers.size(); i++) {
+                CardTransferRequest transfer = transfers.get(i);
+                VelocityLimiter.Reservation reservation = null;
+                try {
+                    Money amount = validate(transfer);
+                    reservation = velocityLimiter.acquire(user, transfer.fromCardId(), amount);
+                    move(user.getId(), batchCard(cards, transfer.fromCardId()), batchCard(cards, transfer.toCardId()), amount);
+                    reservations.add(reservation);
+                    applied.add(transfer);
+                    appliedIndexes.add(i);
+                } catch (CardOperationException | NotFoundException e) {
+                    velocityLimiter.release(reservation);
+                    if (mode == BatchTransferMode.ALL_OR_NOTHING) {
+                        throw e instanceof TransferLimitException
+                                ? new TransferLimitException("Перевод №" + (i + 1) + ": " + e.getMessage())
+                                : new CardOperationException("Перевод №" + (i + 1) + ": " + e.getMessage());
+                    }
+                    items[i] = new BatchTransferItemResponse(i, BatchItemStatus.REJECTED, null, e.getMessage());
+                }
+            }
+
+            cardRepository.saveAll(cards.values());
+            operationIds = ledgerService.recordTransfers(applied);
+        } catch (RuntimeException e) {
+            reservations.forEach(velocityLimiter::release);
+            throw e;
+        }
+        for (int i = 0; i < appliedIndexes.size(); i++) {
+            int index = appliedIndexes.get(i);
+            items[index] = new BatchTransferItemResponse(index, BatchItemStatus.COMPLETED, operationIds.get(i), null);
+        }
+        return Arrays.asList(items);
+    }
+
+    private Map<Long, Card> lockCards(Set<Long> cardIds) {
+        setLockTimeout();
+        Map<Long, Card> cards = new HashMap<>();
+        for (Card card : cardRepository.findAllByIdForUpdate(cardIds)) {
+            cards.put(card.getId(), card);
+        }
+        return cards;
+    }
+
+    private Card batchCard(Map<Long, Card> cards, Long cardId) {
+        Card card = cards.get(cardId);
+        if (card == null) {
+            throw new NotFoundException("Карта не найдена. ID: " + cardId);
+        }
+        return card;
+    }
+
+    Money validate(CardTransferRequest request) {
+        Money amount = Money.of(request.amount());
+        if (amount.signum() <= 0) {
+            throw new CardOperationException("Сумма должна быть положительной");
+        }
+
+        if (request.fromCardId().equals(request.toCardId())) {
+            throw new CardOperationException("Нельзя переводить на ту же карту");
+        }
+        return amount;
+    }
+
+    private TransferResult inTransaction(Supplier<User> owner, CardTransferRequest request, String idempotencyKey,
+                                         BiFunction<User, CardTransferRequest, UUID> transfer) {
+        return transactionTemplate.execute(status -> {
+            User user = owner.get();
+            if (idempotencyKey != null) {
+                Optional<UUID> stored = idempotencyService.claim(user.getId(), idempotencyKey, request);
+                if (stored.isPresent()) {
+                    return new TransferResult(stored.get(), true);
+                }
+            }
+
+            // Лимит учитывается после проверки ключа: повтор запроса не расходует лимит второй раз
+            VelocityLimiter.Reservation reservation = velocityLimiter.acquire(user, request.fromCardId(), Money.of(request.amount()));
+            try {
+                UUID operationId = transfer.apply(user, request);
+                if (idempotencyKey != null) {
+                    idempotencyService.complete(user.getId(), idempotencyKey, operationId);
+                }
+                return new TransferResult(operationId, false);
+            } catch (RuntimeException e) {
+                velocityLimiter.release(reservation);
+                throw e;
+            }
+        });
+    }
+
+    // Два условных UPDATE без загрузки карт; порядок по ID тот же, что и в PESSIMISTIC, чтобы не было взаимных блокировок
+    private UUID transferAtomic(User user, CardTransferRequest request) {
+        setLockTimeout();
+        Long fromCardId = request.fromCardId();
+        Long toCardId = request.toCardId();
+        BigDecimal amount = request.amount();
+
+        if (fromCardId < toCardId) {
+            debit(user, fromCardId, amount);
+            credit(user, toCardId, amount);
+        } else {
+            credit(user, toCardId, amount);
+            debit(user, fromCardId, amount);
+        }
+
+        return ledgerService.recordTransfer(fromCardId, toCardId, amount);
+    }
+
+    private UUID transferToCustomer(User user, CardTransferRequest request) {
+        setLockTimeout();
+        Long fromCardId = request.fromCardId();
+        Long toCardId = request.toCardId();
+        BigDecimal amount = request.amount();
+
+        if (fromCardId < toCardId) {
+            debit(user, fromCardId, amount);
+            creditCustomer(toCardId, amount);
+        } else {
+            creditCustomer(toCardId, amount);
+            debit(user, fromCardId, amount);
+        }
+
+        return ledgerService.recordTransfer(fromCardId, toCardId, amount);
+    }
+
+    // Причина не уточняется: отправитель не должен узнавать статус чужой карты
+    private void creditCustomer(Long cardId, BigDecimal amount) {
+        if (cardRepository.creditAny(cardId, amount, CardStatus.ACTIVE.name()) == 0) {
+            throw new CardOperationException("Карта получателя недоступна для зачисления");
+        }
+    }
+
+    private void debit(User user, Long cardId, BigDecimal amount) {
+        if (cardRepository.debit(cardId, user.getId(), amount, CardStatus.ACTIVE.name()) == 0) {
+            throw rejection(user, cardId, true);
+        }
+    }
+
+    private void credit(User user, Long cardId, BigDecimal amount) {
+        if (cardRepository.credit(cardId, user.getId(), amount, CardStatus.ACTIVE.name()) == 0) {
+            throw rejection(user, cardId, false);
+        }
+    }
+
+    // UPDATE не затронул строку: причину выясняем отдельным запросом, транзакция все равно откатывается
+    private CardOperationException rejection(User user, Long cardId, boolean debit) {
+        Card card = findCardById(cardId);
+
+        if (!card.getUser().equals(user)) {
+            return new CardOperationException("Перевод возможен только между вашими картами");
+        }
+
+        if (card.getStatus() != CardStatus.ACTIVE) {
+            return new CardOperationException("Перевод возможен только между активными картами");
+        }
+
+        return new CardOperationException(debit ? "Недостаточно средств" : "Не удалось зачислить средства");
+    }
+
+    // Карты блокируются по возрастанию ID, поэтому встречные переводы не приводят к взаимной блокировке
+    private UUID transferLocked(User user, CardTransferRequest request) {
+        setLockTimeout();
+        Card first = lockCardById(Math.min(request.fromCardId(), request.toCardId()));
+        Card second = lockCardById(Math.max(request.fromCardId(), request.toCardId()));
+        Card fromCard = first.getId().equals(request.fromCardId()) ? first : second;
+        Card toCard = fromCard == first ? second : first;
+
+        move(user.getId(), fromCard, toCard, Money.of(request.amount()));
+
+        cardRepository.save(fromCard);
+        cardRepository.save(toCard);
+        return ledgerService.recordTransfer(fromCard.getId(), toCard.getId(), request.amount());
+    }
+
+    // Без блокировок: конфликт обнаруживается по версии при записи, перевод повторяется в новой транзакции
+    private TransferResult transferOptimistic(Supplier<User> owner, CardTransferRequest request, String idempotencyKey) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return inTransaction(owner, request, idempotencyKey, this::transferVersioned);
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= properties.maxAttempts()) {
+                    log.warn("Перевод с карты {} не выполнен за {} попыток", request.fromCardId(), attempt);
+                    throw e;
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    private UUID transferVersioned(User user, CardTransferRequest request) {
+        Card fromCard = findCardById(request.fromCardId());
+        Card toCard = findCardById(request.toCardId());
+
+        move(user.getId(), fromCard, toCard, Money.of(request.amount()));
+
+        cardRepository.saveAll(List.of(fromCard, toCard));
+        cardRepository.flush();
+        return ledgerService.recordTransfer(fromCard.getId(), toCard.getId(), request.amount());
+    }
+
+    private void move(Long userId, Card fromCard, Card toCard, Money amount) {
+        if (!fromCard.getUser().getId().equals(userId) || !toCard.getUser().getId().equals(userId)) {
+            throw new CardOperationException("Перевод возможен только между вашими картами");
+        }
+
+        if (fromCard.getStatus() != CardStatus.ACTIVE || toCard.getStatus() != CardStatus.ACTIVE) {
+            throw new CardOperationException("Перевод возможен только между активными картами");
+        }
+
+        if (fromCard.getBalance().isLessThan(amount)) {
+            throw new CardOperationException("Недостаточно средств");
+        }
+
+        fromCard.setBalance(fromCard.getBalance().minus(amount));
+        toCard.setBalance(toCard.getBalance().plus(amount));
+    }
+
+    // Экспоненциальная задержка с полным джиттером, чтобы конкурирующие переводы не повторялись синхронно
+    private void backoff(int attempt) {
+        long ceiling = Math.min(properties.maxBackoff().toNanos(), properties.backoff().toNanos() << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceiling + 1)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CardOperationException("Перевод прерван");
+        }
+    }
+
+    // Ожидание блокировки строки ограничено во всех режимах: без блокировок в памяти (несколько узлов)
+    // UPDATE иначе ждал бы без срока, удерживая соединение пула
+    private void setLockTimeout() {
+        cardRepository.setLockTimeout(String.valueOf(properties.lockTimeout().toMillis()));
+    }
+
+    private Card lockCardById(Long cardId) {
+        return cardRepository
+                .findByIdForUpdate(cardId)
+                .orElseThrow(() -> new NotFoundException("Карта не найдена. ID: " + cardId));
+    }
+
+    private Card findCardById(Long cardId) {
+        return cardRepository
+                .findById(cardId)
+                .orElseThrow(() -> new NotFoundException("Карта не найдена. ID: " + cardId));
+    }
+}
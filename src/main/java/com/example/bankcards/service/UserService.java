@@ -111,7 +111,8 @@ public class UserService {
         );
     }
 
-    private User findUserById(Long id) {
+    @Transactional(readOnly = true)
+    public User findUserById(Long id) {
         return userRepository
                 .findById(id)
                 .orElseThrow(() -> new NotFoundException("Пользователь не найден. Id: " + id));
@@ -0,0 +1,33 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.user.Role;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "cards.transfer.limits")
+public record VelocityLimitProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("50000") int maxTrackedCards,
+        @DefaultValue("50000") int maxTrackedUsers,
+        Map<Role, Limits> roles
+) {
+
+    public VelocityLimitProperties {
+        roles = roles != null ? Map.copyOf(roles) : Map.of();
+    }
+
+    public record Limits(
+            @DefaultValue Limit card,
+            @DefaultValue Limit user
+    ) {}
+
+    // Незаданное значение - без ограничения
+    public record Limit(
+            BigDecimal amountPerHour,
+            BigDecimal amountPerDay,
+            Integer countPerMinute
+    ) {}
+}
@@ -0,0 +1,205 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.user.Role;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.TransferLimitException;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.util.Money;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Slf4j
+@Service
+public class VelocityLimiter {
+
+    // История загружается 5-минутными суммами: в часовом окне 12 бакетов, в суточном 24 по часу
+    private static final Duration HISTORY_BUCKET = Duration.ofMinutes(5);
+    private static final Duration DAY = Duration.ofDays(1);
+
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final Clock clock;
+    private final boolean enabled;
+    private final Map<Role, VelocityLimitProperties.Limits> limits;
+
+    // Размер ограничен: вытесненная карта при следующем переводе восстанавливается из журнала отдельным запросом
+    private final Cache<Long, Counter> cards;
+    private final Cache<Long, Counter> users;
+    private final AtomicBoolean cardsEvicted = new AtomicBoolean();
+    private final AtomicBoolean usersEvicted = new AtomicBoolean();
+
+    @Autowired
+    public VelocityLimiter(LedgerEntryRepository ledgerEntryRepository,
+                           VelocityLimitProperties properties,
+                           MeterRegistry meterRegistry) {
+        this(ledgerEntryRepository, properties, meterRegistry, Clock.systemDefaultZone());
+    }
+
+    VelocityLimiter(LedgerEntryRepository ledgerEntryRepository,
+                    VelocityLimitProperties properties,
+                    MeterRegistry meterRegistry,
+                    Clock clock) {
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.clock = clock;
+        this.enabled = properties.enabled() && !properties.roles().isEmpty();
+        this.limits = properties.roles();
+        this.cards = counters(properties.maxTrackedCards(), cardsEvicted);
+        this.users = counters(properties.maxTrackedUsers(), usersEvicted);
+        CaffeineCacheMetrics.monitor(meterRegistry, cards, "cards.velocity.cards");
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "cards.velocity.users");
+    }
+
+    // Учтенный перевод: при откате транзакции снимается с тех же бакетов, в которые был добавлен
+    public record Reservation(Long cardId, Long userId, long amount, long atMillis) {}
+
+    // Счетчики за последние сутки строятся одним агрегирующим запросом к журналу
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+
+        List<LedgerEntryRepository.VelocityBucket> buckets =
+                ledgerEntryRepository.findVelocitySince(now().minus(DAY), HISTORY_BUCKET.toSeconds());
+        for (LedgerEntryRepository.VelocityBucket bucket : buckets) {
+            cards.get(bucket.getCardId(), id -> new Counter()).add(bucket);
+            users.get(bucket.getUserId(), id -> new Counter()).add(bucket);
+        }
+        log.info("Лимиты переводов восстановлены из журнала. Карт: {}, пользователей: {}",
+                cards.estimatedSize(), users.estimatedSize());
+    }
+
+    // Проверка и учет атомарны для карты и пользователя: параллельные переводы не превысят лимит вдвоем
+    public Reservation acquire(User user, Long cardId, Money amount) {
+        VelocityLimitProperties.Limits roleLimits = enabled ? limits.get(user.getRole()) : null;
+        if (roleLimits == null) {
+            return null;
+        }
+
+        long at = millis(now());
+        Counter card = cards.get(cardId, this::loadCard);
+        Counter owner = users.get(user.getId(), this::loadUser);
+
+        // Порядок захвата всегда карта, затем пользователь
+        synchronized (card) {
+            synchronized (owner) {
+                check(card, roleLimits.card(), at, amount, "по карте");
+                check(owner, roleLimits.user(), at, amount, "пользователя");
+                card.add(at, amount.minor(), 1);
+                owner.add(at, amount.minor(), 1);
+            }
+        }
+        return new Reservation(cardId, user.getId(), amount.minor(), at);
+    }
+
+    public void release(Reservation reservation) {
+        if (reservation == null) {
+            return;
+        }
+
+        Counter card = cards.getIfPresent(reservation.cardId());
+        if (card != null) {
+            synchronized (card) {
+                card.add(reservation.atMillis(), -reservation.amount(), -1);
+            }
+        }
+        Counter owner = users.getIfPresent(reservation.userId());
+        if (owner != null) {
+            synchronized (owner) {
+                owner.add(reservation.atMillis(), -reservation.amount(), -1);
+            }
+        }
+    }
+
+    private void check(Counter counter, VelocityLimitProperties.Limit limit, long at, Money amount, String scope) {
+        if (limit.countPerMinute() != null && counter.minute.sum(at) + 1 > limit.countPerMinute()) {
+            throw new TransferLimitException("Превышено число переводов в минуту " + scope);
+        }
+        if (exceeds(limit.amountPerHour(), counter.hour.sum(at), amount)) {
+            throw new TransferLimitException("Превышен лимит суммы переводов за час " + scope);
+        }
+        if (exceeds(limit.amountPerDay(), counter.day.sum(at), amount)) {
+            throw new TransferLimitException("Превышен лимит суммы переводов за сутки " + scope);
+        }
+    }
+
+    private boolean exceeds(BigDecimal limit, long spent, Money amount) {
+        return limit != null && Money.ofMinor(spent).plus(amount).compareTo(Money.of(limit)) > 0;
+    }
+
+    // Пока ничего не вытеснялось, отсутствие счетчика означает, что переводов за сутки не было
+    private Counter loadCard(Long cardId) {
+        return cardsEvicted.get()
+                ? Counter.of(ledgerEntryRepository.findVelocityByCard(cardId, now().minus(DAY), HISTORY_BUCKET.toSeconds()))
+                : new Counter();
+    }
+
+    private Counter loadUser(Long userId) {
+        return usersEvicted.get()
+                ? Counter.of(ledgerEntryRepository.findVelocityByUser(userId, now().minus(DAY), HISTORY_BUCKET.toSeconds()))
+                : new Counter();
+    }
+
+    private Cache<Long, Counter> counters(int maxSize, AtomicBoolean evicted) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(DAY)
+                // Синхронно с вытеснением: промах по вытесненной карте уже видит флаг и загружает счетчик из журнала
+                .evictionListener((Long key, Counter counter, RemovalCause cause) -> {
+                    if (cause == RemovalCause.SIZE) {
+                        evicted.set(true);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.now(clock);
+    }
+
+    // Время журнала хранится без зоны, поэтому и в памяти оно переводится в миллисекунды как UTC
+    private static long millis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    // Около 0.5 КБ на карту или пользователя
+    private static final class Counter {
+
+        private final SlidingWindow minute = new SlidingWindow(6, Duration.ofSeconds(10));
+        private final SlidingWindow hour = new SlidingWindow(12, HISTORY_BUCKET);
+        private final SlidingWindow day = new SlidingWindow(24, Duration.ofHours(1));
+
+        private static Counter of(List<LedgerEntryRepository.VelocityBucket> buckets) {
+            Counter counter = new Counter();
+            buckets.forEach(counter::add);
+            return counter;
+        }
+
+        private synchronized void add(LedgerEntryRepository.VelocityBucket bucket) {
+            add(bucket.getBucket() * HISTORY_BUCKET.toMillis(), Money.of(bucket.getAmount()).minor(), bucket.getTransfers());
+        }
+
+        private void add(long at, long amount, long count) {
+            minute.add(at, count);
+            hour.add(at, amount);
+            day.add(at, amount);
+        }
+    }
+}
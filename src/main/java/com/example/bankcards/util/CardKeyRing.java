@@ -0,0 +1,63 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.EncryptException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+public class CardKeyRing {
+
+    public static final int LEGACY_VERSION = 0;
+    // Зарезервирована для шифротекстов, зашифрованных ключом пользователя
+    public static final int DATA_KEY_VERSION = 255;
+
+    private final Map<Integer, SecretKeySpec> keys = new HashMap<>();
+    private final int activeVersion;
+
+    @Autowired
+    public CardKeyRing(EncryptProperties properties) {
+        this(allKeys(properties), properties.activeVersion());
+    }
+
+    public CardKeyRing(Map<Integer, String> keys, int activeVersion) {
+        keys.forEach((version, key) -> {
+            if (version < 0 || version >= DATA_KEY_VERSION) {
+                throw new IllegalArgumentException("Версия ключа должна быть в диапазоне 0..254: " + version);
+            }
+            this.keys.put(version, new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "AES"));
+        });
+
+        if (!this.keys.containsKey(activeVersion)) {
+            throw new IllegalArgumentException("Не задан ключ для активной версии " + activeVersion);
+        }
+        this.activeVersion = activeVersion;
+    }
+
+    public int activeVersion() {
+        return activeVersion;
+    }
+
+    public SecretKeySpec key(int version) {
+        SecretKeySpec key = keys.get(version);
+        if (key == null) {
+            throw new EncryptException("Неизвестная версия ключа шифрования: " + version, null);
+        }
+        return key;
+    }
+
+    private static Map<Integer, String> allKeys(EncryptProperties properties) {
+        Map<Integer, String> all = new HashMap<>();
+        if (properties.key() != null) {
+            all.put(LEGACY_VERSION, properties.key());
+        }
+        if (properties.keys() != null) {
+            all.putAll(properties.keys());
+        }
+        return all;
+    }
+}
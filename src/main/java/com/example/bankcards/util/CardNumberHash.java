@@ -0,0 +1,57 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.EncryptException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+@Component
+public class CardNumberHash {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec secretKeySpec;
+    private final BlockingQueue<Mac> macs;
+
+    public CardNumberHash(@Value("${encrypt.hmac-key}") String secretKey,
+                          @Value("${encrypt.pool-size:0}") int poolSize) {
+        this.secretKeySpec = new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = new ArrayBlockingQueue<>(poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public String hash(String number) {
+        Mac mac = acquire();
+        try {
+            byte[] digest = mac.doFinal(normalize(number).getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest);
+        } finally {
+            macs.offer(mac);
+        }
+    }
+
+    public static String normalize(String number) {
+        return number.replaceAll("\\s", "");
+    }
+
+    private Mac acquire() {
+        Mac mac = macs.poll();
+        if (mac != null) {
+            return mac;
+        }
+
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKeySpec);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new EncryptException("Ошибка при инициализации HMAC", e);
+        }
+    }
+}
@@ -5,11 +5,17 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 
 @Component
@@ -18,53 +24,216 @@ public class EncryptCard {
     private static final String ALGORITHM = "AES/GCM/NoPadding";
     private static final int TAG_LENGTH = 128;
     private static final int IV_LENGTH = 12;
+    private static final int DATA_KEY_LENGTH = 32;
 
-    private final SecretKeySpec secretKeySpec;
+    // Формат шифротекста: [версия ключа][IV][шифротекст + тег], версия DATA_KEY_VERSION - ключ пользователя
+    private static final int VERSION_LENGTH = 1;
+    private static final int HEADER_LENGTH = VERSION_LENGTH + IV_LENGTH;
+
+    private final CardKeyRing keyRing;
     private final SecureRandom secureRandom = new SecureRandom();
 
-    public EncryptCard(@Value("${encrypt.key}") String secretKey) {
-        this.secretKeySpec = new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), "AES");
+    // Пул вместо ThreadLocal: виртуальные потоки живут недолго и не переиспользовали бы Cipher
+    private final BlockingQueue<Engine> engines;
+
+    public EncryptCard(CardKeyRing keyRing,
+                       @Value("${encrypt.pool-size:0}") int poolSize) {
+        this.keyRing = keyRing;
+        this.engines = new ArrayBlockingQueue<>(poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public byte[] encrypt(String number) {
+        return encrypt(number, null);
     }
 
-    public String encrypt(String number) {
+    public byte[] encrypt(String number, SecretKey dataKey) {
+        Engine engine = acquire();
         try {
-            byte[] iv = new byte[IV_LENGTH];
-            secureRandom.nextBytes(iv);
+            return engine.encrypt(number.getBytes(StandardCharsets.UTF_8), dataKey);
+        } catch (Exception e) {
+            throw new EncryptException("Ошибка при шифровании - ", e);
+        } finally {
+            release(engine);
+        }
+    }
+
+    public String decrypt(byte[] encrypt) {
+        return decrypt(encrypt, null);
+    }
+
+    public String decrypt(byte[] encrypt, SecretKey dataKey) {
+        Engine engine = acquire();
+        try {
+            return engine.decryptString(encrypt, dataKey);
+        } catch (Exception e) {
+            throw new EncryptException("Ошибка при дешифровании", e);
+        } finally {
+            release(engine);
+        }
+    }
+
+    public byte[] reencrypt(byte[] encrypt) {
+        Engine engine = acquire();
+        try {
+            return engine.encrypt(engine.decrypt(encrypt, null), null);
+        } catch (Exception e) {
+            throw new EncryptException("Ошибка при перешифровании", e);
+        } finally {
+            release(engine);
+        }
+    }
+
+    public int keyVersion(byte[] encrypt) {
+        return Byte.toUnsignedInt(encrypt[0]);
+    }
 
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            GCMParameterSpec spec = new GCMParameterSpec(TAG_LENGTH, iv);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, spec);
+    public boolean isDataKeyEncrypted(byte[] encrypt) {
+        return keyVersion(encrypt) == CardKeyRing.DATA_KEY_VERSION;
+    }
+
+    public SecretKey generateDataKey() {
+        byte[] key = new byte[DATA_KEY_LENGTH];
+        secureRandom.nextBytes(key);
+        return new SecretKeySpec(key, "AES");
+    }
 
-            byte[] cipherText = cipher.doFinal(number.getBytes(StandardCharsets.UTF_8));
+    // Ключ пользователя хранится зашифрованным активным мастер-ключом в том же формате, что и номера карт
+    public byte[] wrapKey(SecretKey dataKey) {
+        Engine engine = acquire();
+        try {
+            return engine.encrypt(dataKey.getEncoded(), null);
+        } catch (Exception e) {
+            throw new EncryptException("Ошибка при шифровании ключа", e);
+        } finally {
+            release(engine);
+        }
+    }
 
-            byte[] combined = new byte[iv.length + cipherText.length];
-            System.arraycopy(iv, 0, combined, 0, iv.length);
-            System.arraycopy(cipherText, 0, combined, iv.length, cipherText.length);
-            return Base64.getEncoder().encodeToString(combined);
+    public SecretKey unwrapKey(byte[] wrapped) {
+        Engine engine = acquire();
+        try {
+            return new SecretKeySpec(engine.decrypt(wrapped, null), "AES");
+        } catch (Exception e) {
+            throw new EncryptException("Ошибка при дешифровании ключа", e);
+        } finally {
+            release(engine);
+        }
+    }
 
+    public List<byte[]> encryptAll(List<String> numbers) {
+        Engine engine = acquire();
+        try {
+            List<byte[]> result = new ArrayList<>(numbers.size());
+            for (String number : numbers) {
+                result.add(engine.encrypt(number.getBytes(StandardCharsets.UTF_8), null));
+            }
+            return result;
         } catch (Exception e) {
             throw new EncryptException("Ошибка при шифровании - ", e);
+        } finally {
+            release(engine);
         }
     }
 
-    public String decrypt(String encrypt) {
+    public List<String> decryptAll(List<byte[]> encrypted) {
+        return decryptAll(encrypted, null);
+    }
+
+    // Значения, которые не удалось расшифровать, возвращаются как null, чтобы одна битая запись не ломала страницу
+    public List<String> decryptAll(List<byte[]> encrypted, List<SecretKey> dataKeys) {
+        Engine engine = acquire();
         try {
-            byte[] combined = Base64.getDecoder().decode(encrypt);
+            List<String> result = new ArrayList<>(encrypted.size());
+            for (int i = 0; i < encrypted.size(); i++) {
+                String plain;
+                try {
+                    plain = engine.decryptString(encrypted.get(i), dataKeys != null ? dataKeys.get(i) : null);
+                } catch (Exception e) {
+                    plain = null;
+                }
+                result.add(plain);
+            }
+            return result;
+        } finally {
+            release(engine);
+        }
+    }
 
-            byte[] iv = new byte[IV_LENGTH];
-            byte[] cipherText = new byte[combined.length - IV_LENGTH];
-            System.arraycopy(combined, 0, iv, 0, IV_LENGTH);
-            System.arraycopy(combined, IV_LENGTH, cipherText, 0, cipherText.length);
+    private Engine acquire() {
+        Engine engine = engines.poll();
+        if (engine != null) {
+            return engine;
+        }
+
+        try {
+            return new Engine(Cipher.getInstance(ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new EncryptException("Ошибка при инициализации шифра", e);
+        }
+    }
 
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            GCMParameterSpec spec = new GCMParameterSpec(TAG_LENGTH, iv);
-            cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, spec);
+    private void release(Engine engine) {
+        engines.offer(engine);
+    }
 
-            byte[] plain = cipher.doFinal(cipherText);
-            return new String(plain, StandardCharsets.UTF_8);
+    private final class Engine {
 
-        } catch (Exception e) {
-            throw new EncryptException("Ошибка при дешифровании", e);
+        private final Cipher cipher;
+        private final byte[] iv = new byte[IV_LENGTH];
+        private byte[] plain = new byte[32];
+
+        private Engine(Cipher cipher) {
+            this.cipher = cipher;
+        }
+
+        private byte[] encrypt(byte[] input, SecretKey dataKey) throws GeneralSecurityException {
+            int version = dataKey != null ? CardKeyRing.DATA_KEY_VERSION : keyRing.activeVersion();
+            secureRandom.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey != null ? dataKey : keyRing.key(version), new GCMParameterSpec(TAG_LENGTH, iv));
+
+            byte[] result = new byte[HEADER_LENGTH + cipher.getOutputSize(input.length)];
+            result[0] = (byte) version;
+            System.arraycopy(iv, 0, result, VERSION_LENGTH, IV_LENGTH);
+
+            cipher.doFinal(input, 0, input.length, result, HEADER_LENGTH);
+            return result;
+        }
+
+        private String decryptString(byte[] encrypt, SecretKey dataKey) throws GeneralSecurityException {
+            int written = decryptToBuffer(encrypt, dataKey);
+            return new String(plain, 0, written, StandardCharsets.UTF_8);
+        }
+
+        private byte[] decrypt(byte[] encrypt, SecretKey dataKey) throws GeneralSecurityException {
+            int written = decryptToBuffer(encrypt, dataKey);
+            byte[] result = Arrays.copyOf(plain, written);
+            Arrays.fill(plain, 0, written, (byte) 0);
+            return result;
+        }
+
+        private int decryptToBuffer(byte[] encrypt, SecretKey dataKey) throws GeneralSecurityException {
+            int cipherLength = encrypt.length - HEADER_LENGTH;
+            if (cipherLength <= 0) {
+                throw new IllegalArgumentException("Слишком короткий шифротекст");
+            }
+
+            cipher.init(Cipher.DECRYPT_MODE, key(encrypt, dataKey), new GCMParameterSpec(TAG_LENGTH, encrypt, VERSION_LENGTH, IV_LENGTH));
+
+            int length = cipher.getOutputSize(cipherLength);
+            if (plain.length < length) {
+                plain = new byte[length];
+            }
+            return cipher.doFinal(encrypt, HEADER_LENGTH, cipherLength, plain, 0);
+        }
+
+        private SecretKey key(byte[] encrypt, SecretKey dataKey) {
+            if (!isDataKeyEncrypted(encrypt)) {
+                return keyRing.key(keyVersion(encrypt));
+            }
+            if (dataKey == null) {
+                throw new EncryptException("Номер зашифрован ключом пользователя, ключ не передан", null);
+            }
+            return dataKey;
         }
     }
 }
@@ -0,0 +1,13 @@
+package com.example.bankcards.util;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "encrypt")
+public record EncryptProperties(
+        String key,
+        @DefaultValue("0") int activeVersion,
+        Map<Integer, String> keys
+) {}
@@ -0,0 +1,105 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.CardOperationException;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Сумма в копейках: арифметика на горячем пути без создания BigDecimal, переполнение проверяется явно
+@Schema(type = "number", example = "1000.00")
+@JsonSerialize(using = Money.Serializer.class)
+public record Money(long minor) implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_PER_MAJOR = 100;
+
+    public static Money ofMinor(long minor) {
+        return new Money(minor);
+    }
+
+    public static Money ofMajor(long major) {
+        try {
+            return new Money(Math.multiplyExact(major, MINOR_PER_MAJOR));
+        } catch (ArithmeticException e) {
+            throw overflow();
+        }
+    }
+
+    // Дробная часть длиннее копеек не округляется молча, а отклоняется
+    @JsonCreator
+    public static Money of(BigDecimal value) {
+        try {
+            return new Money(value.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+        } catch (ArithmeticException e) {
+            throw new CardOperationException("Сумма должна быть не больше " + Long.MAX_VALUE / MINOR_PER_MAJOR
+                    + " и содержать не более двух знаков после запятой");
+        }
+    }
+
+    public Money plus(Money other) {
+        try {
+            return new Money(Math.addExact(minor, other.minor));
+        } catch (ArithmeticException e) {
+            throw overflow();
+        }
+    }
+
+    public Money minus(Money other) {
+        try {
+            return new Money(Math.subtractExact(minor, other.minor));
+        } catch (ArithmeticException e) {
+            throw overflow();
+        }
+    }
+
+    public int signum() {
+        return Long.signum(minor);
+    }
+
+    public boolean isLessThan(Money other) {
+        return minor < other.minor;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public String toString() {
+        long major = minor / MINOR_PER_MAJOR;
+        long cents = Math.abs(minor % MINOR_PER_MAJOR);
+        String sign = minor < 0 && major == 0 ? "-" : "";
+        return sign + major + (cents < 10 ? ".0" : ".") + cents;
+    }
+
+    private static CardOperationException overflow() {
+        return new CardOperationException("Переполнение денежной суммы");
+    }
+
+    static class Serializer extends StdSerializer<Money> {
+
+        Serializer() {
+            super(Money.class);
+        }
+
+        // Число пишется из строки: без промежуточного BigDecimal
+        @Override
+        public void serialize(Money value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeNumber(value.toString());
+        }
+    }
+}
@@ -5,14 +5,64 @@ import java.util.Random;
 
 public class NumberGenerator {
 
+    public static final int LENGTH = 16;
+
+    private static final Random RANDOM = new SecureRandom();
+    private static final long[] POW10 = new long[LENGTH];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < LENGTH; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
     public static String generateNumber() {
-        StringBuilder number = new StringBuilder();
-        Random random = new SecureRandom();
+        return generateNumber("");
+    }
+
+    // Случайная часть берется одним вызовом SecureRandom, последняя цифра - контрольная по алгоритму Луна
+    public static String generateNumber(String bin) {
+        if (bin.length() >= LENGTH) {
+            throw new IllegalArgumentException("BIN должен быть короче номера карты: " + bin);
+        }
+
+        char[] digits = new char[LENGTH];
+        bin.getChars(0, bin.length(), digits, 0);
+
+        long body = RANDOM.nextLong(POW10[LENGTH - 1 - bin.length()]);
+        for (int i = LENGTH - 2; i >= bin.length(); i--) {
+            digits[i] = (char) ('0' + body % 10);
+            body /= 10;
+        }
+        digits[LENGTH - 1] = (char) ('0' + checkDigit(digits, LENGTH - 1));
+
+        return new String(digits);
+    }
+
+    public static boolean isValid(String number) {
+        if (number.length() != LENGTH || !number.chars().allMatch(Character::isDigit)) {
+            return false;
+        }
+
+        return checkDigit(number.toCharArray(), LENGTH - 1) == number.charAt(LENGTH - 1) - '0';
+    }
 
-        for (int i = 0; i < 16; i++) {
-            number.append(random.nextInt(10));
+    private static int checkDigit(char[] digits, int length) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int i = length - 1; i >= 0; i--) {
+            int digit = digits[i] - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
         }
 
-        return number.toString();
+        return (10 - sum % 10) % 10;
     }
 }
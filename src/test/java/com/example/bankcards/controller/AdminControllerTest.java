@@ -5,6 +5,7 @@ import com.example.bankcards.dto.response.user.UserResponse;
 import com.example.bankcards.entity.user.Role;
 import com.example.bankcards.security.JwtTokenProvider;
 import com.example.bankcards.security.UserDetailsServiceCustom;
+import com.example.bankcards.service.DataKeyService;
 import com.example.bankcards.service.UserService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.DisplayName;
@@ -41,6 +42,9 @@ public class AdminControllerTest {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private DataKeyService dataKeyService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -51,6 +55,10 @@ public class AdminControllerTest {
             return Mockito.mock(UserService.class);
         }
         @Bean
+        public DataKeyService dataKeyService() {
+            return Mockito.mock(DataKeyService.class);
+        }
+        @Bean
         public JwtTokenProvider jwtTokenProvider() {
             return Mockito.mock(JwtTokenProvider.class);
         }
@@ -115,4 +123,14 @@ public class AdminControllerTest {
 
         Mockito.verify(userService).deleteUser(1L);
     }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    @DisplayName("Ротация ключа пользователя")
+    void rotateDataKeySuccess() throws Exception {
+        mockMvc.perform(post("/api/v1/admin/users/1/rotate_key"))
+                .andExpect(status().isOk());
+
+        Mockito.verify(dataKeyService).rotate(1L);
+    }
 }
@@ -2,6 +2,7 @@ package com.example.bankcards.controller;
 
 
 import com.example.bankcards.dto.request.card.CardCreateRequest;
+import com.example.bankcards.dto.request.card.CardNumberRequest;
 import com.example.bankcards.dto.response.block.BlockResponse;
 import com.example.bankcards.dto.response.card.CardResponse;
 import com.example.bankcards.entity.card.CardStatus;
@@ -10,6 +11,7 @@ import com.example.bankcards.security.JwtTokenProvider;
 import com.example.bankcards.security.UserDetailsServiceCustom;
 import com.example.bankcards.service.CardService;
 import com.example.bankcards.service.RequestBlockService;
+import com.example.bankcards.util.Money;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -27,7 +29,6 @@ import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -79,7 +80,7 @@ public class CardAdminControllerTest {
     @WithMockUser(roles = "ADMIN")
     @DisplayName("Получение всех карт")
     void getAllCardsSuccess() throws Exception {
-        CardResponse card = new CardResponse(1L, "**** **** **** 1111", "Dmitrii", "Dmitrii", LocalDate.now().plusYears(1), CardStatus.ACTIVE, new BigDecimal(1000));
+        CardResponse card = new CardResponse(1L, "**** **** **** 1111", "Dmitrii", "Dmitrii", LocalDate.now().plusYears(1), CardStatus.ACTIVE, Money.ofMajor(1000));
         Page<CardResponse> page = new PageImpl<>(List.of(card));
 
         Mockito.when(cardService.findAllCards(any(Pageable.class))).thenReturn(page);
@@ -110,7 +111,7 @@ public class CardAdminControllerTest {
     @DisplayName("Создание карты")
     void createCardSuccess() throws Exception {
         CardCreateRequest request = new CardCreateRequest("test@gmail.com");
-        CardResponse response = new CardResponse(1L, "**** **** **** 1111", "Dmitrii", "Dmitrii", LocalDate.now().plusYears(1), CardStatus.ACTIVE, new BigDecimal(1000));
+        CardResponse response = new CardResponse(1L, "**** **** **** 1111", "Dmitrii", "Dmitrii", LocalDate.now().plusYears(1), CardStatus.ACTIVE, Money.ofMajor(1000));
 
         Mockito.when(cardService.createCard(any(CardCreateRequest.class))).thenReturn(response);
 
@@ -126,6 +127,33 @@ public class CardAdminControllerTest {
                 .andExpect(jsonPath("$.expirationDate").value(LocalDate.now().plusYears(1).toString()));
     }
 
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    @DisplayName("Поиск карты по номеру")
+    void findCardByNumberSuccess() throws Exception {
+        CardNumberRequest request = new CardNumberRequest("1234 1234 1234 1111");
+        CardResponse response = new CardResponse(1L, "**** **** **** 1111", "Dmitrii", "Dmitrii", LocalDate.now().plusYears(1), CardStatus.ACTIVE, Money.ofMajor(1000));
+
+        Mockito.when(cardService.findCardByNumber("1234 1234 1234 1111")).thenReturn(response);
+
+        mockMvc.perform(post("/api/v1/admin/cards/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(response.id()))
+                .andExpect(jsonPath("$.cardNumber").value("**** **** **** 1111"));
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    @DisplayName("Поиск карты по номеру - неверный формат")
+    void findCardByNumberFail() throws Exception {
+        mockMvc.perform(post("/api/v1/admin/cards/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new CardNumberRequest("1234"))))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @WithMockUser(roles = "ADMIN")
     @DisplayName("Выполнить запрос")
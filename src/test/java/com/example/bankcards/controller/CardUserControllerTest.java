@@ -1,15 +1,35 @@
 package com.example.bankcards.controller;
 
 
+import com.example.bankcards.dto.request.card.CardBatchTransferRequest;
+import com.example.bankcards.dto.request.card.CardNumberTransferRequest;
 import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.request.card.StandingOrderRequest;
 import com.example.bankcards.dto.response.block.BlockResponse;
+import com.example.bankcards.dto.response.card.BatchTransferItemResponse;
+import com.example.bankcards.dto.response.card.BatchTransferResponse;
 import com.example.bankcards.dto.response.card.CardResponse;
+import com.example.bankcards.dto.response.card.StandingOrderResponse;
+import com.example.bankcards.dto.response.card.TransactionPageResponse;
+import com.example.bankcards.dto.response.card.TransactionResponse;
+import com.example.bankcards.dto.response.card.TransferOrderResponse;
 import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.ledger.EntryType;
+import com.example.bankcards.entity.ledger.LedgerOperation;
 import com.example.bankcards.entity.request.RequestStatus;
+import com.example.bankcards.entity.standing.StandingOrderPeriod;
+import com.example.bankcards.entity.standing.StandingOrderStatus;
+import com.example.bankcards.entity.transfer.TransferOrderStatus;
 import com.example.bankcards.security.JwtTokenProvider;
 import com.example.bankcards.security.UserDetailsServiceCustom;
+import com.example.bankcards.service.BatchItemStatus;
+import com.example.bankcards.service.BatchTransferMode;
 import com.example.bankcards.service.CardService;
 import com.example.bankcards.service.RequestBlockService;
+import com.example.bankcards.service.StandingOrderService;
+import com.example.bankcards.service.TransferQueueService;
+import com.example.bankcards.service.TransferResult;
+import com.example.bankcards.util.Money;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -20,6 +40,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -27,12 +48,15 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.http.MediaType;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.UUID;
 
 
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -53,6 +77,11 @@ public class CardUserControllerTest {
     @Autowired
     private RequestBlockService requestBlockService;
 
+    @Autowired
+    private TransferQueueService transferQueueService;
+
+    @Autowired
+    private StandingOrderService standingOrderService;
 
     @Autowired
     private ObjectMapper objectMapper;
@@ -69,6 +98,16 @@ public class CardUserControllerTest {
             return Mockito.mock(RequestBlockService.class);
         }
 
+        @Bean
+        public TransferQueueService transferQueueService() {
+            return Mockito.mock(TransferQueueService.class);
+        }
+
+        @Bean
+        public StandingOrderService standingOrderService() {
+            return Mockito.mock(StandingOrderService.class);
+        }
+
         @Bean
         public JwtTokenProvider jwtTokenProvider() {
             return Mockito.mock(JwtTokenProvider.class);
@@ -84,7 +123,7 @@ public class CardUserControllerTest {
     @DisplayName("Получение карт")
     @WithMockUser(roles = "USER")
     void getCardsSuccess() throws Exception {
-        Page<CardResponse> response = new PageImpl<>(List.of(new CardResponse(1L, "**** **** **** 1111", "Dmitrii", "Dmitrii", LocalDate.now().plusYears(1), CardStatus.ACTIVE, new BigDecimal("500"))));
+        Page<CardResponse> response = new PageImpl<>(List.of(new CardResponse(1L, "**** **** **** 1111", "Dmitrii", "Dmitrii", LocalDate.now().plusYears(1), CardStatus.ACTIVE, Money.ofMajor(500))));
         Mockito.when(cardService.findCardsByEmail(any(), any())).thenReturn(response);
 
         mockMvc.perform(get("/api/v1/cards"))
@@ -95,7 +134,7 @@ public class CardUserControllerTest {
     @DisplayName("Получение карты по ID")
     @WithMockUser(roles = "USER")
     void getCardByIdSuccess() throws Exception {
-        CardResponse response = new CardResponse(1L, "**** **** **** 1111", "Dmitrii", "Dmitrii", LocalDate.now().plusYears(1), CardStatus.ACTIVE, new BigDecimal("500"));
+        CardResponse response = new CardResponse(1L, "**** **** **** 1111", "Dmitrii", "Dmitrii", LocalDate.now().plusYears(1), CardStatus.ACTIVE, Money.ofMajor(500));
         Mockito.when(cardService.findCardByEmailAndId(any(), any())).thenReturn(response);
 
         mockMvc.perform(get("/api/v1/cards/1"))
@@ -106,11 +145,11 @@ public class CardUserControllerTest {
     @DisplayName("Получение баланса карты по ID")
     @WithMockUser(roles = "USER")
     void getBalanceSuccess() throws Exception {
-        Mockito.when(cardService.findCardBalance(any(), any())).thenReturn(BigDecimal.valueOf(1000));
+        Mockito.when(cardService.findCardBalance(any(), any())).thenReturn(Money.ofMajor(1000));
 
         mockMvc.perform(get("/api/v1/cards/1/balance"))
                 .andExpect(status().isOk())
-                .andExpect(content().string("1000"));
+                .andExpect(content().string("1000.00"));
     }
 
     @Test
@@ -138,12 +177,210 @@ public class CardUserControllerTest {
     @WithMockUser(roles = "USER")
     void transferSuccess() throws Exception {
         CardTransferRequest request = new CardTransferRequest(1L, 2L, new BigDecimal("1000"));
+        UUID operationId = UUID.randomUUID();
+        Mockito.when(cardService.transferMoney(any(), any(CardTransferRequest.class), isNull()))
+                .thenReturn(new TransferResult(operationId, false));
 
         mockMvc.perform(post("/api/v1/cards/transfer")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(request)))
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.operationId").value(operationId.toString()))
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        Mockito.verify(cardService).transferMoney(any(), any(CardTransferRequest.class), isNull());
+    }
+
+    @Test
+    @DisplayName("Перевод - повтор с тем же Idempotency-Key")
+    @WithMockUser(roles = "USER")
+    void transferReplay() throws Exception {
+        CardTransferRequest request = new CardTransferRequest(1L, 2L, new BigDecimal("1000"));
+        UUID operationId = UUID.randomUUID();
+        Mockito.when(cardService.transferMoney(any(), any(CardTransferRequest.class), eq("key-1")))
+                .thenReturn(new TransferResult(operationId, true));
+
+        mockMvc.perform(post("/api/v1/cards/transfer")
+                        .header("Idempotency-Key", "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.operationId").value(operationId.toString()))
+                .andExpect(header().string("Idempotent-Replayed", "true"));
+    }
+
+    @Test
+    @DisplayName("Перевод - карта заблокирована другой операцией")
+    @WithMockUser(roles = "USER")
+    void transferLockTimeout() throws Exception {
+        CardTransferRequest request = new CardTransferRequest(1L, 2L, new BigDecimal("1000"));
+        Mockito.doThrow(new PessimisticLockingFailureException("lock timeout"))
+                .when(cardService).transferMoney(any(), any(CardTransferRequest.class), any());
+
+        mockMvc.perform(post("/api/v1/cards/transfer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @DisplayName("Пакетный перевод")
+    @WithMockUser(roles = "USER")
+    void transferBatchSuccess() throws Exception {
+        CardBatchTransferRequest request = new CardBatchTransferRequest(
+                List.of(new CardTransferRequest(1L, 2L, new BigDecimal("100"))), BatchTransferMode.PER_ITEM);
+        Mockito.when(cardService.transferBatch(any(), any(CardBatchTransferRequest.class))).thenReturn(new BatchTransferResponse(1, 0,
+                List.of(new BatchTransferItemResponse(0, BatchItemStatus.COMPLETED, UUID.randomUUID(), null))));
+
+        mockMvc.perform(post("/api/v1/cards/transfers/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.completed").value(1))
+                .andExpect(jsonPath("$.items[0].status").value("COMPLETED"));
+    }
+
+    @Test
+    @DisplayName("Пакетный перевод - пустой пакет")
+    @WithMockUser(roles = "USER")
+    void transferBatchEmpty() throws Exception {
+        CardBatchTransferRequest request = new CardBatchTransferRequest(List.of(), null);
+
+        mockMvc.perform(post("/api/v1/cards/transfers/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("История операций по карте")
+    @WithMockUser(roles = "USER")
+    void getTransactionsSuccess() throws Exception {
+        TransactionPageResponse response = new TransactionPageResponse(List.of(new TransactionResponse(
+                10L, UUID.randomUUID(), LedgerOperation.TRANSFER, EntryType.DEBIT, new BigDecimal("100"), LocalDateTime.now())), "next");
+        Mockito.when(cardService.findTransactions(any(), eq(1L), eq("cursor"), eq(20))).thenReturn(response);
+
+        mockMvc.perform(get("/api/v1/cards/1/transactions")
+                        .param("cursor", "cursor")
+                        .param("size", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id").value(10))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    @DisplayName("История операций по карте - размер страницы вне диапазона")
+    @WithMockUser(roles = "USER")
+    void getTransactionsInvalidSize() throws Exception {
+        mockMvc.perform(get("/api/v1/cards/1/transactions")
+                        .param("size", "1000"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Асинхронный перевод - 202 и ссылка на статус")
+    @WithMockUser(roles = "USER")
+    void submitTransferAccepted() throws Exception {
+        CardTransferRequest request = new CardTransferRequest(1L, 2L, new BigDecimal("100"));
+        UUID id = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        Mockito.when(transferQueueService.submit(any(), any(CardTransferRequest.class))).thenReturn(new TransferOrderResponse(
+                id, TransferOrderStatus.PENDING, 1L, 2L, new BigDecimal("100"), null, null, now, now));
+
+        mockMvc.perform(post("/api/v1/cards/transfers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "http://localhost/api/v1/cards/transfers/" + id))
+                .andExpect(jsonPath("$.id").value(id.toString()))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+
+    @Test
+    @DisplayName("Статус асинхронного перевода с ожиданием")
+    @WithMockUser(roles = "USER")
+    void getTransferStatus() throws Exception {
+        UUID id = UUID.randomUUID();
+        UUID operationId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        Mockito.when(transferQueueService.findOrder(any(), eq(id), eq(Duration.ofSeconds(5)))).thenReturn(new TransferOrderResponse(
+                id, TransferOrderStatus.COMPLETED, 1L, 2L, new BigDecimal("100"), operationId, null, now, now));
+
+        mockMvc.perform(get("/api/v1/cards/transfers/" + id).param("wait", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.operationId").value(operationId.toString()));
+    }
+
+    @Test
+    @DisplayName("Перевод по номеру карты")
+    @WithMockUser(roles = "USER")
+    void transferByNumberSuccess() throws Exception {
+        CardNumberTransferRequest request = new CardNumberTransferRequest(1L, "2200 0012 3456 7890", new BigDecimal("100"));
+        UUID operationId = UUID.randomUUID();
+        Mockito.when(cardService.transferToCustomer(any(), any(CardNumberTransferRequest.class), isNull()))
+                .thenReturn(new TransferResult(operationId, false));
+
+        mockMvc.perform(post("/api/v1/cards/transfer/by_number")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.operationId").value(operationId.toString()));
+    }
 
-        Mockito.verify(cardService).transferMoney(any(), any(CardTransferRequest.class));
+    @Test
+    @DisplayName("Перевод по номеру карты - неверный формат номера")
+    @WithMockUser(roles = "USER")
+    void transferByNumberInvalid() throws Exception {
+        CardNumberTransferRequest request = new CardNumberTransferRequest(1L, "2200-0012", new BigDecimal("100"));
+
+        mockMvc.perform(post("/api/v1/cards/transfer/by_number")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Создание регулярного перевода")
+    @WithMockUser(roles = "USER")
+    void createStandingOrderSuccess() throws Exception {
+        LocalDateTime startAt = LocalDateTime.now().plusDays(1);
+        StandingOrderRequest request = new StandingOrderRequest(1L, 2L, new BigDecimal("100"), startAt, StandingOrderPeriod.MONTHLY, 7);
+        Mockito.when(standingOrderService.create(any(), any(StandingOrderRequest.class))).thenReturn(new StandingOrderResponse(
+                1L, StandingOrderStatus.ACTIVE, 1L, 2L, new BigDecimal("100"), StandingOrderPeriod.MONTHLY, 7,
+                startAt, null, null, null, LocalDateTime.now()));
+
+        mockMvc.perform(post("/api/v1/cards/standing_orders")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("ACTIVE"))
+                .andExpect(jsonPath("$.priority").value(7));
+    }
+
+    @Test
+    @DisplayName("Создание регулярного перевода - приоритет вне диапазона")
+    @WithMockUser(roles = "USER")
+    void createStandingOrderInvalidPriority() throws Exception {
+        StandingOrderRequest request = new StandingOrderRequest(1L, 2L, new BigDecimal("100"),
+                LocalDateTime.now().plusDays(1), StandingOrderPeriod.DAILY, 10);
+
+        mockMvc.perform(post("/api/v1/cards/standing_orders")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Отмена регулярного перевода")
+    @WithMockUser(roles = "USER")
+    void cancelStandingOrderSuccess() throws Exception {
+        Mockito.when(standingOrderService.cancel(any(), eq(1L))).thenReturn(new StandingOrderResponse(
+                1L, StandingOrderStatus.CANCELLED, 1L, 2L, new BigDecimal("100"), StandingOrderPeriod.DAILY, 5,
+                null, null, null, null, LocalDateTime.now()));
+
+        mockMvc.perform(delete("/api/v1/cards/standing_orders/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("CANCELLED"));
     }
 }
@@ -0,0 +1,87 @@
+package com.example.bankcards.job;
+
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardNumberHash;
+import com.example.bankcards.util.EncryptCard;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardNumberBackfillJobTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private EncryptCard encryptCard;
+
+    @Mock
+    private CardNumberHash cardNumberHash;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private CardNumberBackfillJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new CardNumberBackfillJob(cardRepository, encryptCard, cardNumberHash, transactionTemplate, false, 2, 2);
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    @DisplayName("Заполнение данных номеров пакетами")
+    void runSuccess() {
+        byte[] firstNumber = {1};
+        byte[] secondNumber = {2};
+        byte[] thirdNumber = {3};
+
+        when(cardRepository.findIdsToBackfill(0L, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(cardRepository.findIdsToBackfill(2L, Limit.of(2))).thenReturn(List.of(3L));
+        when(cardRepository.findIdsToBackfill(3L, Limit.of(2))).thenReturn(List.of());
+        when(cardRepository.findNumbersByIdIn(List.of(1L, 2L))).thenReturn(List.of(number(1L, firstNumber), number(2L, secondNumber)));
+        when(cardRepository.findNumbersByIdIn(List.of(3L))).thenReturn(List.of(number(3L, thirdNumber)));
+        when(encryptCard.decryptAll(List.of(firstNumber, secondNumber))).thenReturn(Arrays.asList("1111111111111111", null));
+        when(encryptCard.decryptAll(List.of(thirdNumber))).thenReturn(List.of("3333333333333333"));
+        when(cardNumberHash.hash("1111111111111111")).thenReturn("hash-1");
+        when(cardNumberHash.hash("3333333333333333")).thenReturn("hash-3");
+        when(cardRepository.updateNumberHash(any(), any(), any())).thenReturn(1);
+
+        int processed = job.run();
+
+        assertEquals(2, processed);
+        verify(cardRepository).updateNumberHash(1L, "hash-1", "1111");
+        verify(cardRepository).updateNumberHash(3L, "hash-3", "3333");
+        verify(cardRepository, never()).updateNumberHash(eq(2L), any(), any());
+        verify(cardRepository, never()).saveAll(any());
+    }
+
+    private CardRepository.CardNumber number(Long id, byte[] number) {
+        return new CardRepository.CardNumber() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public byte[] getNumber() {
+                return number;
+            }
+        };
+    }
+}
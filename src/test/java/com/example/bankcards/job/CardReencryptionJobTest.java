@@ -0,0 +1,129 @@
+package com.example.bankcards.job;
+
+import com.example.bankcards.exception.EncryptException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardKeyRing;
+import com.example.bankcards.util.EncryptCard;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardReencryptionJobTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private EncryptCard encryptCard;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private MeterRegistry meterRegistry;
+    private CardReencryptionJob job;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        CardKeyRing keyRing = new CardKeyRing(Map.of(0, "12345678901234567890123456789012", 1, "abcdefghijklmnopqrstuvwxyz123456"), 1);
+        job = new CardReencryptionJob(cardRepository, userRepository, encryptCard, keyRing, transactionTemplate, meterRegistry, false, 2, 0);
+
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doCallRealMethod().when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    @DisplayName("Перешифрование пакетами с метриками")
+    void runSuccess() {
+        byte[] firstOld = {0, 1};
+        byte[] secondOld = {0, 2};
+        byte[] thirdOld = {0, 3};
+        byte[] firstNew = {1, 1};
+        byte[] thirdNew = {1, 3};
+
+        when(cardRepository.countNotEncryptedWith(1)).thenReturn(3L);
+        when(cardRepository.findIdsNotEncryptedWith(1, 0L, 2)).thenReturn(List.of(1L, 2L));
+        when(cardRepository.findIdsNotEncryptedWith(1, 2L, 2)).thenReturn(List.of(3L));
+        when(cardRepository.findIdsNotEncryptedWith(1, 3L, 2)).thenReturn(List.of());
+        when(cardRepository.findNumbersByIdIn(List.of(1L, 2L))).thenReturn(List.of(number(1L, firstOld), number(2L, secondOld)));
+        when(cardRepository.findNumbersByIdIn(List.of(3L))).thenReturn(List.of(number(3L, thirdOld)));
+        when(encryptCard.reencrypt(firstOld)).thenReturn(firstNew);
+        when(encryptCard.reencrypt(secondOld)).thenThrow(new EncryptException("Ошибка при перешифровании", null));
+        when(encryptCard.reencrypt(thirdOld)).thenReturn(thirdNew);
+        when(cardRepository.updateNumber(any(), any(), any())).thenReturn(1);
+
+        long processed = job.run();
+
+        assertEquals(3, processed);
+        verify(cardRepository).updateNumber(1L, firstOld, firstNew);
+        verify(cardRepository).updateNumber(3L, thirdOld, thirdNew);
+        verify(cardRepository, never()).updateNumber(eq(2L), any(), any());
+        verify(cardRepository, never()).saveAll(any());
+        assertEquals(1.0, job.progress());
+        assertEquals(2.0, meterRegistry.get("cards.reencryption.cards").tag("result", "success").counter().count());
+        assertEquals(1.0, meterRegistry.get("cards.reencryption.cards").tag("result", "failure").counter().count());
+        assertEquals(2, meterRegistry.get("cards.reencryption.batch").timer().count());
+    }
+
+    @Test
+    @DisplayName("Перешифрование ключей пользователей")
+    void runRewrapDataKeys() {
+        byte[] oldKey = {0, 9};
+        byte[] newKey = {1, 9};
+        UserRepository.UserDataKey user = new UserRepository.UserDataKey() {
+            @Override
+            public Long getId() {
+                return 5L;
+            }
+
+            @Override
+            public byte[] getDataKey() {
+                return oldKey;
+            }
+        };
+
+        when(cardRepository.findIdsNotEncryptedWith(1, 0L, 2)).thenReturn(List.of());
+        when(userRepository.findIdsWithDataKeyNotWrappedWith(1, 0L, 2)).thenReturn(List.of(5L));
+        when(userRepository.findIdsWithDataKeyNotWrappedWith(1, 5L, 2)).thenReturn(List.of());
+        when(userRepository.findDataKeysByIdIn(List.of(5L))).thenReturn(List.of(user));
+        when(encryptCard.reencrypt(oldKey)).thenReturn(newKey);
+
+        assertEquals(0, job.run());
+        verify(userRepository).replaceDataKey(5L, oldKey, newKey);
+        verify(userRepository, never()).saveAll(any());
+    }
+
+    private CardRepository.CardNumber number(Long id, byte[] number) {
+        return new CardRepository.CardNumber() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public byte[] getNumber() {
+                return number;
+            }
+        };
+    }
+}
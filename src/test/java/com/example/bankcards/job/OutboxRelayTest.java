@@ -0,0 +1,94 @@
+package com.example.bankcards.job;
+
+import com.example.bankcards.entity.outbox.OutboxEvent;
+import com.example.bankcards.entity.outbox.OutboxEventType;
+import com.example.bankcards.repository.OutboxEventRepository;
+import com.example.bankcards.service.OutboxSink;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private OutboxSink outboxSink;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        relay = new OutboxRelay(outboxEventRepository, outboxSink, transactionTemplate, new SimpleMeterRegistry(),
+                false, 2, Duration.ofMillis(200));
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    @DisplayName("Порция доставляется по порядку и удаляется одним запросом")
+    void relayBatch() {
+        List<OutboxEvent> events = List.of(event(1L), event(2L));
+        when(outboxEventRepository.tryLock(anyLong())).thenReturn(true);
+        when(outboxEventRepository.findByOrderByIdAsc(Limit.of(2))).thenReturn(events);
+
+        assertEquals(2, relay.relay());
+
+        InOrder inOrder = inOrder(outboxSink, outboxEventRepository);
+        inOrder.verify(outboxSink).deliver(events);
+        inOrder.verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+    }
+
+    @Test
+    @DisplayName("Другой узел уже доставляет события")
+    void relayLocked() {
+        when(outboxEventRepository.tryLock(anyLong())).thenReturn(false);
+
+        assertEquals(0, relay.relay());
+        verify(outboxEventRepository, never()).findByOrderByIdAsc(any());
+        verifyNoInteractions(outboxSink);
+    }
+
+    @Test
+    @DisplayName("Ошибка получателя оставляет события в таблице")
+    void relaySinkFailure() {
+        List<OutboxEvent> events = List.of(event(1L));
+        when(outboxEventRepository.tryLock(anyLong())).thenReturn(true);
+        when(outboxEventRepository.findByOrderByIdAsc(Limit.of(2))).thenReturn(events);
+        doThrow(new IllegalStateException("sink unavailable")).when(outboxSink).deliver(events);
+
+        assertThrows(IllegalStateException.class, () -> relay.relay());
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+    }
+
+    private OutboxEvent event(Long id) {
+        return OutboxEvent.builder()
+                .id(id)
+                .eventType(OutboxEventType.TRANSFER_COMPLETED)
+                .aggregateId(1L)
+                .payload("{}")
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
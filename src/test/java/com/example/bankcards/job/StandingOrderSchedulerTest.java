@@ -0,0 +1,116 @@
+package com.example.bankcards.job;
+
+import com.example.bankcards.entity.standing.StandingOrder;
+import com.example.bankcards.service.StandingOrderService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StandingOrderSchedulerTest {
+
+    @Mock
+    private StandingOrderService standingOrderService;
+
+    @Test
+    @DisplayName("Наступившие переводы разбираются порциями, переводы с одной карты - по порядку")
+    void drainBatches() throws Exception {
+        StandingOrder first = order(1L, 1L);
+        StandingOrder second = order(2L, 1L);
+        StandingOrder third = order(3L, 2L);
+        when(standingOrderService.claim(2)).thenReturn(List.of(first, second), List.of(third), List.of());
+
+        int executed = scheduler(2, 4, 0).drain();
+
+        assertEquals(3, executed);
+        InOrder inOrder = inOrder(standingOrderService);
+        inOrder.verify(standingOrderService).execute(first);
+        inOrder.verify(standingOrderService).execute(second);
+        verify(standingOrderService).execute(third);
+    }
+
+    @Test
+    @DisplayName("Разные карты выполняются параллельно, но не больше заданного числа потоков")
+    void parallelAcrossCards() throws Exception {
+        List<StandingOrder> orders = new ArrayList<>();
+        LongStream.rangeClosed(1, 12).forEach(id -> orders.add(order(id, id)));
+        when(standingOrderService.claim(50)).thenReturn(orders, List.of());
+
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        doAnswer(inv -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            active.decrementAndGet();
+            return null;
+        }).when(standingOrderService).execute(any());
+
+        assertEquals(12, scheduler(50, 3, 0).drain());
+        assertTrue(maxActive.get() > 1);
+        assertTrue(maxActive.get() <= 3);
+    }
+
+    @Test
+    @DisplayName("Скорость исполнения ограничена")
+    void throttle() throws Exception {
+        List<StandingOrder> orders = new ArrayList<>();
+        LongStream.rangeClosed(1, 11).forEach(id -> orders.add(order(id, id)));
+        when(standingOrderService.claim(50)).thenReturn(orders, List.of());
+
+        long startedAt = System.nanoTime();
+        scheduler(50, 4, 100).drain();
+
+        // 11 переводов при 100 в секунду: последний не раньше чем через 100 мс
+        assertTrue(System.nanoTime() - startedAt >= Duration.ofMillis(95).toNanos());
+        verify(standingOrderService, times(11)).execute(any());
+    }
+
+    @Test
+    @DisplayName("Планировщик уступает пул соединений интерактивным запросам")
+    void yieldsToInteractive() throws Exception {
+        AtomicInteger waiters = new AtomicInteger(2);
+        when(standingOrderService.claim(50)).thenReturn(List.of(order(1L, 1L)), List.of());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        new StandingOrderScheduler(standingOrderService, () -> Math.max(waiters.getAndDecrement(), 0), meterRegistry,
+                false, 50, 4, 0, true, Duration.ofSeconds(1)).drain();
+
+        assertEquals(2, meterRegistry.counter("cards.transfer.scheduled.yields").count());
+        verify(standingOrderService).execute(any());
+    }
+
+    @Test
+    @DisplayName("Ошибка одного перевода не останавливает остальные")
+    void failureIsolated() throws Exception {
+        StandingOrder failing = order(1L, 1L);
+        StandingOrder next = order(2L, 1L);
+        when(standingOrderService.claim(50)).thenReturn(List.of(failing, next), List.of());
+        doThrow(new IllegalStateException("connection lost")).when(standingOrderService).execute(failing);
+
+        assertEquals(2, scheduler(50, 4, 0).drain());
+        verify(standingOrderService).execute(next);
+    }
+
+    private StandingOrderScheduler scheduler(int batchSize, int parallelism, int rate) {
+        return new StandingOrderScheduler(standingOrderService, () -> 0, new SimpleMeterRegistry(),
+                false, batchSize, parallelism, rate, false, Duration.ofSeconds(1));
+    }
+
+    private StandingOrder order(Long id, Long fromCardId) {
+        return StandingOrder.builder().id(id).fromCardId(fromCardId).toCardId(100L).build();
+    }
+}
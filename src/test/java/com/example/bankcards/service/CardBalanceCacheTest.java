@@ -0,0 +1,124 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardBalanceCacheTest {
+
+    private static final String EMAIL = "dmitrii@gmail.com";
+
+    @Mock
+    private CardRepository cardRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CardBalanceCache cardBalanceCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cardBalanceCache = new CardBalanceCache(cardRepository, meterRegistry, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    @DisplayName("Повторное чтение баланса не обращается к базе, попадания и промахи в метриках")
+    void hit() {
+        mockBalance(1L, Money.ofMajor(1000), EMAIL);
+
+        assertEquals(Money.ofMajor(1000), cardBalanceCache.balance(EMAIL, 1L));
+        assertEquals(Money.ofMajor(1000), cardBalanceCache.balance(EMAIL, 1L));
+
+        verify(cardRepository, times(1)).findBalanceById(1L);
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "cards.balances").tag("result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "cards.balances").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    @DisplayName("Чужая карта - ошибка и при чтении из кэша")
+    void notOwner() {
+        mockBalance(1L, Money.ofMajor(1000), "other@gmail.com");
+
+        assertThrows(CardOperationException.class, () -> cardBalanceCache.balance(EMAIL, 1L));
+        assertThrows(CardOperationException.class, () -> cardBalanceCache.balance(EMAIL, 1L));
+        verify(cardRepository, times(1)).findBalanceById(1L);
+    }
+
+    @Test
+    @DisplayName("Отсутствующая карта не кэшируется")
+    void notFound() {
+        when(cardRepository.findBalanceById(1L)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> cardBalanceCache.balance(EMAIL, 1L));
+        assertThrows(NotFoundException.class, () -> cardBalanceCache.balance(EMAIL, 1L));
+        verify(cardRepository, times(2)).findBalanceById(1L);
+    }
+
+    @Test
+    @DisplayName("Сброс вне транзакции выполняется сразу")
+    void evictWithoutTransaction() {
+        mockBalance(1L, Money.ofMajor(1000), EMAIL);
+        cardBalanceCache.balance(EMAIL, 1L);
+
+        cardBalanceCache.evict(1L);
+        cardBalanceCache.balance(EMAIL, 1L);
+
+        verify(cardRepository, times(2)).findBalanceById(1L);
+    }
+
+    @Test
+    @DisplayName("Сброс в транзакции выполняется после коммита")
+    void evictAfterCommit() {
+        mockBalance(1L, Money.ofMajor(1000), EMAIL);
+        mockBalance(2L, Money.ofMajor(500), EMAIL);
+        cardBalanceCache.balance(EMAIL, 1L);
+        cardBalanceCache.balance(EMAIL, 2L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cardBalanceCache.evictAll(List.of(1L, 2L));
+            cardBalanceCache.balance(EMAIL, 1L);
+            verify(cardRepository, times(1)).findBalanceById(1L);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        cardBalanceCache.balance(EMAIL, 1L);
+        cardBalanceCache.balance(EMAIL, 2L);
+        verify(cardRepository, times(2)).findBalanceById(1L);
+        verify(cardRepository, times(2)).findBalanceById(2L);
+    }
+
+    private void mockBalance(Long cardId, Money balance, String ownerEmail) {
+        when(cardRepository.findBalanceById(cardId)).thenReturn(Optional.of(new CardRepository.CardBalance() {
+            @Override
+            public Money getBalance() {
+                return balance;
+            }
+
+            @Override
+            public String getOwnerEmail() {
+                return ownerEmail;
+            }
+        }));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardLockManagerTest {
+
+    private MeterRegistry meterRegistry;
+    private CardLockManager cardLockManager;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cardLockManager = new CardLockManager(meterRegistry, true, 8, Duration.ofMillis(100));
+    }
+
+    @Test
+    @DisplayName("Переводы по одной карте выполняются по очереди")
+    void withLocksMutualExclusion() {
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger maxInside = new AtomicInteger();
+        cardLockManager = new CardLockManager(meterRegistry, true, 8, Duration.ofSeconds(10));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 100; i++) {
+                long other = i + 2;
+                executor.submit(() -> cardLockManager.withLocks(List.of(1L, other), () -> {
+                    maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    return inside.decrementAndGet();
+                }));
+            }
+        }
+
+        assertEquals(1, maxInside.get());
+        assertTrue(meterRegistry.get("cards.transfer.lock.wait")
+                .tag("stripe", String.valueOf(cardLockManager.stripe(1L))).timer().count() >= 100);
+    }
+
+    @Test
+    @DisplayName("Встречные переводы не блокируют друг друга")
+    void withLocksOppositeOrder() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) {
+                List<Long> cards = i % 2 == 0 ? List.of(1L, 2L) : List.of(2L, 1L);
+                executor.submit(() -> cardLockManager.withLocks(cards, () -> true));
+            }
+        }
+        assertTrue(cardLockManager.withLocks(List.of(2L, 1L), () -> true));
+    }
+
+    @Test
+    @DisplayName("Ожидание дольше таймаута завершается ошибкой")
+    void withLocksTimeout() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> holder = executor.submit(() -> cardLockManager.withLocks(List.of(1L), () -> {
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            }));
+            locked.await();
+
+            assertThrows(CannotAcquireLockException.class, () -> cardLockManager.withLocks(List.of(1L, 2L), () -> null));
+            release.countDown();
+            holder.get();
+        }
+    }
+
+    @Test
+    @DisplayName("Отключенный менеджер не блокирует")
+    void withLocksDisabled() throws Exception {
+        CardLockManager disabled = new CardLockManager(meterRegistry, false, 8, Duration.ofMillis(100));
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.submit(() -> disabled.withLocks(List.of(1L), () -> {
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            }));
+            locked.await();
+
+            assertTrue(disabled.withLocks(List.of(1L), () -> true));
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardNumberHash;
+import com.example.bankcards.util.NumberGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardNumberAllocatorTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    private final CardNumberHash cardNumberHash = new CardNumberHash("abcdefghijklmnopqrstuvwxyz123456", 2);
+
+    private CardNumberAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        allocator = new CardNumberAllocator(cardRepository, cardNumberHash, List.of("220000-220099", "4111"), 100);
+    }
+
+    @Test
+    @DisplayName("Выделенные номера уникальны, валидны и принадлежат диапазонам BIN")
+    void allocateUniqueNumbers() {
+        when(cardRepository.findExistingNumberHashes(anyCollection())).thenReturn(List.of());
+
+        Set<String> numbers = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            CardNumberAllocator.AllocatedNumber allocated = allocator.allocate();
+
+            assertTrue(NumberGenerator.isValid(allocated.number()));
+            assertTrue(allocated.number().matches("2200\\d{12}|4111\\d{12}"), allocated.number());
+            assertEquals(cardNumberHash.hash(allocated.number()), allocated.hash());
+            assertTrue(numbers.add(allocated.number()));
+        }
+    }
+
+    @Test
+    @DisplayName("Уже выпущенные номера не попадают в пул")
+    void refillSkipsIssuedNumbers() {
+        Set<String> issued = ConcurrentHashMap.newKeySet();
+        when(cardRepository.findExistingNumberHashes(anyCollection())).thenAnswer(inv -> {
+            Collection<String> hashes = inv.getArgument(0);
+            List<String> existing = hashes.stream().limit(hashes.size() / 2).toList();
+            issued.addAll(existing);
+            return existing;
+        });
+
+        allocator.refill(40);
+
+        assertEquals(20, allocator.available());
+        for (int i = 0; i < 20; i++) {
+            assertFalse(issued.contains(allocator.allocate().hash()));
+        }
+    }
+
+    @Test
+    @DisplayName("Пул пуст и все номера заняты")
+    void allocateFail() {
+        when(cardRepository.findExistingNumberHashes(anyCollection()))
+                .thenAnswer(inv -> new ArrayList<>(inv.<Collection<String>>getArgument(0)));
+
+        assertThrows(CardOperationException.class, () -> allocator.allocate());
+    }
+
+    @Test
+    @DisplayName("Неверный диапазон BIN")
+    void invalidBinRange() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CardNumberAllocator(cardRepository, cardNumberHash, List.of("2200-22001"), 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CardNumberAllocator(cardRepository, cardNumberHash, List.of("2299-2200"), 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CardNumberAllocator(cardRepository, cardNumberHash, List.of("22ab"), 10));
+    }
+}
@@ -1,28 +1,41 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.event.CardStatusChangedEvent;
+import com.example.bankcards.dto.request.card.CardBatchTransferRequest;
 import com.example.bankcards.dto.request.card.CardCreateRequest;
+import com.example.bankcards.dto.request.card.CardNumberTransferRequest;
 import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.response.card.BatchTransferItemResponse;
+import com.example.bankcards.dto.response.card.BatchTransferResponse;
 import com.example.bankcards.dto.response.card.CardResponse;
 import com.example.bankcards.entity.card.Card;
 import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.outbox.OutboxEventType;
 import com.example.bankcards.entity.user.User;
 import com.example.bankcards.exception.CardOperationException;
 import com.example.bankcards.exception.NotFoundException;
 import com.example.bankcards.repository.CardRepository;
-import com.example.bankcards.util.EncryptCard;
-import com.example.bankcards.util.NumberGenerator;
+import com.example.bankcards.util.CardNumberHash;
+import com.example.bankcards.util.Money;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.*;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -30,6 +43,8 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class CardServiceTest {
 
+    private static final byte[] ENCRYPTED = {1, 2, 3};
+
     @Mock
     private CardRepository cardRepository;
 
@@ -37,7 +52,34 @@ class CardServiceTest {
     private UserService userService;
 
     @Mock
-    private EncryptCard encryptCard;
+    private DataKeyService dataKeyService;
+
+    @Mock
+    private CardNumberHash cardNumberHash;
+
+    @Mock
+    private CardNumberAllocator cardNumberAllocator;
+
+    @Mock
+    private TransferService transferService;
+
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private RecipientResolver recipientResolver;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private CardBalanceCache cardBalanceCache;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
 
     @InjectMocks
     private CardService cardService;
@@ -47,6 +89,8 @@ class CardServiceTest {
 
     @BeforeEach
     void setUp() {
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
         user = User.builder()
                 .id(1L)
                 .firstName("Dmitrii")
@@ -57,10 +101,10 @@ class CardServiceTest {
         card = Card.builder()
                 .id(1L)
                 .user(user)
-                .number("**** **** **** 1111")
+                .number(ENCRYPTED)
                 .expirationDate(LocalDate.now().plusYears(1))
                 .status(CardStatus.ACTIVE)
-                .balance(BigDecimal.valueOf(1000))
+                .balance(Money.ofMajor(1000))
                 .build();
     }
 
@@ -71,8 +115,8 @@ class CardServiceTest {
         Pageable pageable = PageRequest.of(0, 10);
 
         when(cardRepository.findAll(pageable)).thenReturn(pageIn);
-        when(encryptCard.decrypt("**** **** **** 1111"))
-                .thenReturn("1234 1234 1234 1234");
+        when(dataKeyService.decryptAll(List.of(card)))
+                .thenReturn(List.of("1234 1234 1234 1234"));
 
         Page<CardResponse> pageOut = cardService.findAllCards(pageable);
 
@@ -83,6 +127,36 @@ class CardServiceTest {
         assertEquals("Dmitrii", resp.firstName());
     }
 
+    @Test
+    @DisplayName("Найти все карты - без расшифровки")
+    void findAllCardsWithLastFour() {
+        card.setLastFour("4321");
+        Page<Card> pageIn  = new PageImpl<>(List.of(card));
+        Pageable pageable = PageRequest.of(0, 10);
+
+        when(cardRepository.findAll(pageable)).thenReturn(pageIn);
+
+        Page<CardResponse> pageOut = cardService.findAllCards(pageable);
+
+        assertEquals("**** **** **** 4321", pageOut.getContent().get(0).cardNumber());
+        verifyNoInteractions(dataKeyService);
+    }
+
+    @Test
+    @DisplayName("Найти все карты - ошибка расшифровки")
+    void findAllCardsDecryptFail() {
+        Page<Card> pageIn  = new PageImpl<>(List.of(card));
+        Pageable pageable = PageRequest.of(0, 10);
+
+        when(cardRepository.findAll(pageable)).thenReturn(pageIn);
+        when(dataKeyService.decryptAll(List.of(card)))
+                .thenReturn(Collections.singletonList(null));
+
+        Page<CardResponse> pageOut = cardService.findAllCards(pageable);
+
+        assertEquals("**** **** **** ****", pageOut.getContent().get(0).cardNumber());
+    }
+
     @Test
     @DisplayName("Найти все карты по email")
     void findCardsByEmailSuccess() {
@@ -91,8 +165,8 @@ class CardServiceTest {
 
         when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
         when(cardRepository.findByUser(user, pageable)).thenReturn(pageIn);
-        when(encryptCard.decrypt("**** **** **** 1111"))
-                .thenReturn("1234 1234 1234 1234");
+        when(dataKeyService.decryptAll(List.of(card)))
+                .thenReturn(List.of("1234 1234 1234 1234"));
 
         Page<CardResponse> pageOut = cardService.findCardsByEmail("dmitrii@gmail.com", pageable);
 
@@ -106,9 +180,9 @@ class CardServiceTest {
         Card otherCard = Card.builder()
                 .id(1L)
                 .user(User.builder().id(2L).build())
-                .number("**** **** **** 1111")
+                .number(ENCRYPTED)
                 .status(CardStatus.ACTIVE)
-                .balance(BigDecimal.valueOf(1000))
+                .balance(Money.ofMajor(1000))
                 .build();
 
         when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
@@ -124,40 +198,110 @@ class CardServiceTest {
     @Test
     @DisplayName("Баланс карты")
     void findCardBalanceSuccess() {
-        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
-        when(encryptCard.decrypt("**** **** **** 1111"))
-                .thenReturn("1234 1234 1234 1234");
+        when(cardBalanceCache.balance("dmitrii@gmail.com", 1L)).thenReturn(Money.ofMajor(1000));
 
-        BigDecimal bal = cardService.findCardBalance("dmitrii@gmail.com", 1L);
+        Money bal = cardService.findCardBalance("dmitrii@gmail.com", 1L);
 
-        assertEquals(BigDecimal.valueOf(1000), bal);
+        assertEquals(Money.ofMajor(1000), bal);
+        verifyNoInteractions(userService, cardRepository, dataKeyService);
     }
 
     @Test
     @DisplayName("Создать карту")
     void createCardSuccess() {
-        try (MockedStatic<NumberGenerator> ng = mockStatic(NumberGenerator.class)) {
-            ng.when(NumberGenerator::generateNumber).thenReturn("1234 1234 1234 1234");
+        when(cardNumberAllocator.allocate())
+                .thenReturn(new CardNumberAllocator.AllocatedNumber("2200001234561234", "hash"));
+        when(dataKeyService.encrypt(user, "2200001234561234")).thenReturn(ENCRYPTED);
+
+        when(cardRepository.save(any(Card.class)))
+                .thenAnswer(inv -> {
+                    Card c = inv.getArgument(0);
+                    c.setId(1L);
+                    return c;
+                });
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+
+        CardCreateRequest req = new CardCreateRequest("dmitrii@gmail.com");
+        CardResponse resp = cardService.createCard(req);
+
+        assertEquals("**** **** **** 1234", resp.cardNumber());
+        verify(cardRepository).save(argThat(c -> "1234".equals(c.getLastFour()) && "hash".equals(c.getNumberHash())));
+        verify(cardNumberHash, never()).hash(any());
+        verify(ledgerService).recordIssue(1L, Money.ofMajor(1000).toBigDecimal());
+        verify(outboxService).publish(eq(OutboxEventType.CARD_CREATED), argThat(event -> event.cardId().equals(1L)));
+
+        assertEquals("Dmitrii", resp.firstName());
+        assertEquals(Money.ofMajor(1000), resp.balance());
+    }
 
-            when(encryptCard.encrypt("1234 1234 1234 1234")).thenReturn("**** **** **** 1111");
+    @Test
+    @DisplayName("Создать карту - номер одновременно выдан другим узлом, выделяется новый")
+    void createCardNumberConflict() {
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardNumberAllocator.allocate()).thenReturn(
+                new CardNumberAllocator.AllocatedNumber("2200001234561234", "hash-1"),
+                new CardNumberAllocator.AllocatedNumber("2200001234565678", "hash-2"));
+        when(dataKeyService.encrypt(eq(user), any())).thenReturn(ENCRYPTED);
+        when(cardRepository.save(any(Card.class)))
+                .thenThrow(new DataIntegrityViolationException("insert",
+                        new SQLException("duplicate key value violates unique constraint \"idx_cards_number_hash\"")))
+                .thenAnswer(inv -> {
+                    Card c = inv.getArgument(0);
+                    c.setId(1L);
+                    return c;
+                });
+
+        CardResponse resp = cardService.createCard(new CardCreateRequest("dmitrii@gmail.com"));
+
+        assertEquals("**** **** **** 5678", resp.cardNumber());
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(ledgerService).recordIssue(1L, Money.ofMajor(1000).toBigDecimal());
+    }
 
-            when(cardRepository.save(any(Card.class)))
-                    .thenAnswer(inv -> {
-                        Card c = inv.getArgument(0);
-                        c.setId(1L);
-                        return c;
-                    });
-            when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+    @Test
+    @DisplayName("Создать карту - другие нарушения целостности не повторяются")
+    void createCardOtherIntegrityViolation() {
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardNumberAllocator.allocate()).thenReturn(new CardNumberAllocator.AllocatedNumber("2200001234561234", "hash"));
+        when(cardRepository.save(any(Card.class)))
+                .thenThrow(new DataIntegrityViolationException("insert", new SQLException("violates foreign key constraint")));
 
-            CardCreateRequest req = new CardCreateRequest("dmitrii@gmail.com");
-            CardResponse resp = cardService.createCard(req);
+        assertThrows(DataIntegrityViolationException.class,
+                () -> cardService.createCard(new CardCreateRequest("dmitrii@gmail.com")));
+        verify(cardNumberAllocator, times(1)).allocate();
+    }
 
-            assertTrue(resp.cardNumber().endsWith("1234 1234 1234 1234".substring(15)));
+    @Test
+    @DisplayName("Создать карту - нет свободных номеров")
+    void createCardNoNumbers() {
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardNumberAllocator.allocate()).thenThrow(new CardOperationException("Не удалось выделить номер карты"));
+
+        assertThrows(CardOperationException.class,
+                () -> cardService.createCard(new CardCreateRequest("dmitrii@gmail.com")));
+        verify(cardRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Найти карту по номеру")
+    void findCardByNumberSuccess() {
+        when(cardNumberHash.hash("1234 1234 1234 1234")).thenReturn("hash");
+        when(cardRepository.findByNumberHash("hash")).thenReturn(Optional.of(card));
+
+        CardResponse resp = cardService.findCardByNumber("1234 1234 1234 1234");
+
+        assertEquals(1L, resp.id());
+        assertEquals("**** **** **** 1234", resp.cardNumber());
+        verify(dataKeyService, never()).decrypt(any());
+    }
+
+    @Test
+    @DisplayName("Найти карту по номеру - не найдена")
+    void findCardByNumberFail() {
+        when(cardNumberHash.hash("1234123412341234")).thenReturn("hash");
+        when(cardRepository.findByNumberHash("hash")).thenReturn(Optional.empty());
 
-            assertEquals("Dmitrii", resp.firstName());
-            assertEquals(BigDecimal.valueOf(1000), resp.balance());
-        }
+        assertThrows(NotFoundException.class, () -> cardService.findCardByNumber("1234123412341234"));
     }
 
     @Test
@@ -168,6 +312,8 @@ class CardServiceTest {
         cardService.updateStatus(1L, CardStatus.BLOCKED);
 
         verify(cardRepository).save(argThat(c -> c.getStatus() == CardStatus.BLOCKED));
+        verify(outboxService).publish(OutboxEventType.CARD_STATUS_CHANGED,
+                new CardStatusChangedEvent(1L, user.getId(), CardStatus.ACTIVE, CardStatus.BLOCKED));
     }
 
     @Test
@@ -191,6 +337,7 @@ class CardServiceTest {
         cardService.deleteCard(1L);
 
         verify(cardRepository).delete(card);
+        verify(cardBalanceCache).evict(1L);
     }
 
     @Test
@@ -208,58 +355,61 @@ class CardServiceTest {
     @Test
     @DisplayName("Перевести деньги")
     void transferMoneySuccess() {
-        Card toCard = Card.builder()
-                .id(2L)
-                .user(user)
-                .number("**** **** **** 1111")
-                .status(CardStatus.ACTIVE)
-                .balance(BigDecimal.valueOf(500))
-                .build();
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.valueOf(300));
 
-        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
-        when(cardRepository.findById(2L)).thenReturn(Optional.of(toCard));
+        cardService.transferMoney("dmitrii@gmail.com", req, null);
 
-        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.valueOf(300));
+        verify(transferService).transfer("dmitrii@gmail.com", req, null);
+        verifyNoInteractions(idempotencyService);
+    }
 
-        cardService.transferMoney("dmitrii@gmail.com", req);
+    @Test
+    @DisplayName("Перевести деньги с Idempotency-Key")
+    void transferMoneyIdempotent() {
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.valueOf(300));
+        TransferResult result = new TransferResult(UUID.randomUUID(), false);
+        when(idempotencyService.execute(eq("dmitrii@gmail.com"), eq("key-1"), eq(req), any()))
+                .thenAnswer(inv -> inv.<Supplier<TransferResult>>getArgument(3).get());
+        when(transferService.transfer("dmitrii@gmail.com", req, "key-1")).thenReturn(result);
 
-        assertEquals(BigDecimal.valueOf(700), card.getBalance());
-        assertEquals(BigDecimal.valueOf(800), toCard.getBalance());
+        assertEquals(result, cardService.transferMoney("dmitrii@gmail.com", req, "key-1"));
+    }
 
-        verify(cardRepository, times(2)).save(any(Card.class));
+    @Test
+    @DisplayName("Перевод по номеру карты - получатель определяется до перевода")
+    void transferToCustomer() {
+        when(recipientResolver.resolve("2200 0012 3456 7890")).thenReturn(7L);
+        CardTransferRequest resolved = new CardTransferRequest(1L, 7L, BigDecimal.TEN);
+        TransferResult result = new TransferResult(UUID.randomUUID(), false);
+        when(transferService.transferToCustomer("dmitrii@gmail.com", resolved, null)).thenReturn(result);
+
+        assertEquals(result, cardService.transferToCustomer("dmitrii@gmail.com",
+                new CardNumberTransferRequest(1L, "2200 0012 3456 7890", BigDecimal.TEN), null));
+        verifyNoInteractions(idempotencyService);
     }
 
     @Test
-    @DisplayName("Перевести деньги - не владелец карты")
-    void transferMoneyFail() {
-        User other = User.builder().id(99L).build();
-        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
-        when(cardRepository.findById(2L)).thenReturn(Optional.of(
-                Card.builder().id(2L).user(other).status(CardStatus.ACTIVE).balance(BigDecimal.TEN).build()
-        ));
+    @DisplayName("Пакетный перевод - по умолчанию ALL_OR_NOTHING")
+    void transferBatchDefaultMode() {
+        List<CardTransferRequest> transfers = List.of(new CardTransferRequest(1L, 2L, BigDecimal.TEN));
+        when(transferService.transferBatch("dmitrii@gmail.com", transfers, BatchTransferMode.ALL_OR_NOTHING))
+                .thenReturn(List.of(
+                        new BatchTransferItemResponse(0, BatchItemStatus.COMPLETED, UUID.randomUUID(), null)));
 
-        CardOperationException ex = assertThrows(
-                CardOperationException.class,
-                () -> cardService.transferMoney("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, BigDecimal.ONE))
-        );
-        assertTrue(ex.getMessage().contains("Перевод возможен только между вашими картами"));
+        BatchTransferResponse response = cardService.transferBatch("dmitrii@gmail.com", new CardBatchTransferRequest(transfers, null));
+
+        assertEquals(1, response.completed());
+        assertEquals(0, response.rejected());
     }
 
     @Test
-    @DisplayName("Перевести деньги - недостаточно средств")
-    void transferMoneyFailAmount() {
+    @DisplayName("История операций - чужая карта")
+    void findTransactionsNotOwner() {
+        Card other = Card.builder().id(2L).user(User.builder().id(99L).build()).build();
         when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
-        when(cardRepository.findById(2L)).thenReturn(Optional.of(
-                Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(BigDecimal.ZERO).build()
-        ));
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(other));
 
-        CardOperationException ex = assertThrows(
-                CardOperationException.class,
-                () -> cardService.transferMoney("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, BigDecimal.valueOf(2000)))
-        );
-        assertTrue(ex.getMessage().contains("Недостаточно средств"));
+        assertThrows(CardOperationException.class, () -> cardService.findTransactions("dmitrii@gmail.com", 2L, null, 50));
+        verifyNoInteractions(ledgerService);
     }
 }
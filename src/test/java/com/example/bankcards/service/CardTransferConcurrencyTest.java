@@ -0,0 +1,166 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.entity.card.Card;
+import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.user.Role;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+@SpringBootTest(properties = {
+        "cards.backfill.enabled=false",
+        // Лимиты пользователя отклонили бы почти все переводы теста: проверяется только конкурентный доступ к картам
+        "cards.transfer.limits.enabled=false",
+        "spring.datasource.hikari.maximum-pool-size=20"
+})
+@Testcontainers(disabledWithoutDocker = true)
+class CardTransferConcurrencyTest {
+
+    private static final int CARDS = 8;
+    private static final int TRANSFERS = 500;
+    private static final Money INITIAL_BALANCE = Money.ofMajor(1000);
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private CardLockManager cardLockManager;
+
+    @Autowired
+    private VelocityLimiter velocityLimiter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TransferProperties transferProperties;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @ParameterizedTest
+    @EnumSource(TransferMode.class)
+    @DisplayName("Параллельные переводы сохраняют общий баланс")
+    void concurrentTransfersConserveBalance(TransferMode mode) {
+        TransferService transferService = new TransferService(cardRepository, userService, ledgerService, idempotencyService, cardLockManager, velocityLimiter, transactionTemplate,
+                new TransferProperties(mode, transferProperties.lockTimeout(), transferProperties.maxAttempts(),
+                        transferProperties.backoff(), transferProperties.maxBackoff(), transferProperties.sharding()),
+                new SimpleMeterRegistry());
+        String email = "stress-" + mode.name().toLowerCase() + "@gmail.com";
+
+        User user = userRepository.save(User.builder()
+                .firstName("Dmitrii")
+                .secondName("Dmitrii")
+                .email(email)
+                .password("password")
+                .role(Role.USER)
+                .build());
+
+        List<Long> cardIds = new ArrayList<>();
+        for (int i = 0; i < CARDS; i++) {
+            Card card = cardRepository.save(Card.builder()
+                    .user(user)
+                    .number(new byte[]{0, (byte) i})
+                    .numberHash(email + i)
+                    .lastFour(String.format("%04d", i))
+                    .expirationDate(LocalDate.now().plusYears(1))
+                    .status(CardStatus.ACTIVE)
+                    .balance(INITIAL_BALANCE)
+                    .build());
+            cardIds.add(card.getId());
+        }
+
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        AtomicInteger unexpected = new AtomicInteger();
+
+        long startedAt = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < TRANSFERS; i++) {
+                executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int from = random.nextInt(CARDS);
+                    int to = (from + 1 + random.nextInt(CARDS - 1)) % CARDS;
+                    BigDecimal amount = BigDecimal.valueOf(random.nextInt(1, 100));
+                    try {
+                        transferService.transfer(email,
+                                new CardTransferRequest(cardIds.get(from), cardIds.get(to), amount));
+                        completed.incrementAndGet();
+                    } catch (CardOperationException e) {
+                        rejected.incrementAndGet();
+                        if (!"Недостаточно средств".equals(e.getMessage())) {
+                            unexpected.incrementAndGet();
+                        }
+                    } catch (ConcurrencyFailureException e) {
+                        conflicts.incrementAndGet();
+                    }
+                });
+            }
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startedAt) / 1_000_000);
+        transferService.shutdown();
+
+        Money total = cardRepository.findAllById(cardIds).stream()
+                .map(Card::getBalance)
+                .reduce(Money.ZERO, Money::plus);
+
+        log.info("{}: переводов {}, отклонено {}, конфликтов {}, {} переводов/с",
+                mode, completed.get(), rejected.get(), conflicts.get(), completed.get() * 1000L / elapsedMillis);
+
+        assertEquals(TRANSFERS, completed.get() + rejected.get() + conflicts.get());
+        // Отклонять можно только по недостатку средств; лимиты или иные отказы сделали бы замер бессмысленным
+        assertEquals(0, unexpected.get());
+        assertTrue(completed.get() >= TRANSFERS / 4, "Выполнено переводов: " + completed.get());
+        assertEquals(Money.ofMinor(INITIAL_BALANCE.minor() * CARDS), total);
+        cardRepository.findAllById(cardIds).forEach(card -> {
+            assertTrue(card.getBalance().signum() >= 0);
+            assertEquals(card.getBalance().minus(INITIAL_BALANCE), Money.of(ledgerEntryRepository.sumByCardId(card.getId())));
+        });
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.card.Card;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardKeyRing;
+import com.example.bankcards.util.EncryptCard;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DataKeyServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    private final EncryptCard encryptCard = spy(new EncryptCard(new CardKeyRing(Map.of(0, "12345678901234567890123456789012"), 0), 2));
+
+    private MeterRegistry meterRegistry;
+    private DataKeyService dataKeyService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dataKeyService = new DataKeyService(userRepository, cardRepository, encryptCard, meterRegistry, 100, Duration.ofMinutes(10), 0, 0);
+        user = User.builder().id(1L).build();
+    }
+
+    @Test
+    @DisplayName("Ключ пользователя создается при первом шифровании")
+    void encryptCreatesDataKey() {
+        when(userRepository.initDataKey(eq(1L), any())).thenReturn(1);
+
+        byte[] encrypted = dataKeyService.encrypt(user, "1234123412341234");
+
+        verify(userRepository).findDataKeyForUpdate(1L);
+        assertNotNull(user.getDataKey());
+        assertTrue(encryptCard.isDataKeyEncrypted(encrypted));
+        assertEquals("1234123412341234", dataKeyService.decrypt(Card.builder().user(user).number(encrypted).build()));
+    }
+
+    @Test
+    @DisplayName("Шифрование использует ключ из заблокированной строки, а не устаревший ключ сущности")
+    void encryptUsesLockedDataKey() {
+        byte[] current = encryptCard.wrapKey(encryptCard.generateDataKey());
+        user.setDataKey(encryptCard.wrapKey(encryptCard.generateDataKey()));
+        when(userRepository.findDataKeyForUpdate(1L)).thenReturn(current);
+
+        byte[] encrypted = dataKeyService.encrypt(user, "1234123412341234");
+
+        assertSame(current, user.getDataKey());
+        assertEquals("1234123412341234", encryptCard.decrypt(encrypted, encryptCard.unwrapKey(current)));
+    }
+
+    @Test
+    @DisplayName("Ключ уже создан параллельным запросом")
+    void dataKeyCreatedConcurrently() {
+        byte[] existing = encryptCard.wrapKey(encryptCard.generateDataKey());
+        when(userRepository.initDataKey(eq(1L), any())).thenReturn(0);
+        when(userRepository.findDataKey(1L)).thenReturn(existing);
+
+        dataKeyService.dataKey(user);
+
+        assertSame(existing, user.getDataKey());
+    }
+
+    @Test
+    @DisplayName("Расшифрованный ключ берется из кэша")
+    void dataKeyCached() {
+        user.setDataKey(encryptCard.wrapKey(encryptCard.generateDataKey()));
+
+        SecretKey first = dataKeyService.dataKey(user);
+        SecretKey second = dataKeyService.dataKey(User.builder().id(1L).dataKey(user.getDataKey().clone()).build());
+
+        assertSame(first, second);
+        verify(encryptCard, times(1)).unwrapKey(any());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "cards.data-keys").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    @DisplayName("Пакетное дешифрование карт под разными ключами")
+    void decryptAllMixedKeys() {
+        user.setDataKey(encryptCard.wrapKey(encryptCard.generateDataKey()));
+        when(userRepository.findDataKeyForUpdate(1L)).thenReturn(user.getDataKey());
+        Card legacy = Card.builder().user(user).number(encryptCard.encrypt("1111222233334444")).build();
+        Card enveloped = Card.builder().user(user).number(dataKeyService.encrypt(user, "5555666677778888")).build();
+        Card broken = Card.builder().user(user).number(new byte[]{(byte) CardKeyRing.DATA_KEY_VERSION, 1, 2}).build();
+
+        List<String> numbers = dataKeyService.decryptAll(List.of(legacy, enveloped, broken));
+
+        assertEquals(Arrays.asList("1111222233334444", "5555666677778888", null), numbers);
+    }
+
+    @Test
+    @DisplayName("Ротация ключа пользователя")
+    void rotateSuccess() {
+        user.setDataKey(encryptCard.wrapKey(encryptCard.generateDataKey()));
+        byte[] previousKey = user.getDataKey();
+        when(userRepository.findDataKeyForUpdate(1L)).thenReturn(previousKey);
+        Card enveloped = Card.builder().id(1L).user(user).number(dataKeyService.encrypt(user, "5555666677778888")).build();
+        Card legacy = Card.builder().id(2L).user(user).number(encryptCard.encrypt("1111222233334444")).build();
+
+        when(userRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(user));
+        when(cardRepository.findAllByUser(user)).thenReturn(List.of(enveloped, legacy));
+
+        dataKeyService.rotate(1L);
+
+        assertFalse(Arrays.equals(previousKey, user.getDataKey()));
+        verify(userRepository).replaceDataKey(1L, previousKey, user.getDataKey());
+        verify(userRepository, never()).save(any());
+
+        ArgumentCaptor<byte[]> numbers = ArgumentCaptor.forClass(byte[].class);
+        verify(cardRepository).updateNumber(eq(1L), eq(enveloped.getNumber()), numbers.capture());
+        verify(cardRepository).updateNumber(eq(2L), eq(legacy.getNumber()), numbers.capture());
+        verify(cardRepository, never()).saveAll(any());
+        SecretKey next = encryptCard.unwrapKey(user.getDataKey());
+        assertTrue(encryptCard.isDataKeyEncrypted(numbers.getAllValues().get(1)));
+        assertEquals("5555666677778888", encryptCard.decrypt(numbers.getAllValues().get(0), next));
+        assertEquals("1111222233334444", encryptCard.decrypt(numbers.getAllValues().get(1), next));
+    }
+
+    @Test
+    @DisplayName("Ротация ключа - пользователь не найден")
+    void rotateFail() {
+        when(userRepository.findByIdForUpdate(1L)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> dataKeyService.rotate(1L));
+    }
+
+    @Test
+    @DisplayName("Параллельное дешифрование большой страницы сохраняет порядок")
+    void decryptAllParallel() {
+        DataKeyService parallel = new DataKeyService(userRepository, cardRepository, encryptCard, meterRegistry, 100, Duration.ofMinutes(10), 4, 3);
+        user.setDataKey(encryptCard.wrapKey(encryptCard.generateDataKey()));
+        when(userRepository.findDataKeyForUpdate(1L)).thenReturn(user.getDataKey());
+
+        List<Card> cards = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String number = "111122223333" + (1000 + i);
+            cards.add(Card.builder().user(user).number(parallel.encrypt(user, number)).build());
+            expected.add(number);
+        }
+        cards.add(Card.builder().user(user).number(new byte[]{0, 1, 2}).build());
+        expected.add(null);
+
+        assertEquals(expected, parallel.decryptAll(cards));
+        assertEquals(1, meterRegistry.get("cards.decrypt.page").tag("mode", "parallel").timer().count());
+        assertEquals(0, meterRegistry.get("cards.decrypt.page").tag("mode", "serial").timer().count());
+    }
+}
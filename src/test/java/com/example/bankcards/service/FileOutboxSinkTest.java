@@ -0,0 +1,51 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.outbox.OutboxEvent;
+import com.example.bankcards.entity.outbox.OutboxEventType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileOutboxSinkTest {
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    @DisplayName("События дописываются в файл по одному JSON на строку")
+    void deliver() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        Path file = dir.resolve("outbox/events.jsonl");
+        FileOutboxSink sink = new FileOutboxSink(objectMapper, file);
+
+        sink.deliver(List.of(event(1L, "{\"cardId\":7}")));
+        sink.deliver(List.of(event(2L, "{\"cardId\":8}")));
+        sink.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        JsonNode second = objectMapper.readTree(lines.get(1));
+        assertEquals(2L, second.get("id").asLong());
+        assertEquals("CARD_STATUS_CHANGED", second.get("type").asText());
+        assertEquals(8L, second.get("payload").get("cardId").asLong());
+    }
+
+    private OutboxEvent event(Long id, String payload) {
+        return OutboxEvent.builder()
+                .id(id)
+                .eventType(OutboxEventType.CARD_STATUS_CHANGED)
+                .aggregateId(7L)
+                .payload(payload)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
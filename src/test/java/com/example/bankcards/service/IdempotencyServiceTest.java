@@ -0,0 +1,177 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.entity.idempotency.IdempotencyKey;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    private static final String EMAIL = "dmitrii@gmail.com";
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    private IdempotencyService idempotencyService;
+    private CardTransferRequest request;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(idempotencyKeyRepository, new SimpleMeterRegistry(),
+                100, Duration.ofMinutes(10), Duration.ofHours(24));
+        request = new CardTransferRequest(1L, 2L, BigDecimal.TEN);
+    }
+
+    @Test
+    @DisplayName("Повтор ключа возвращает сохраненный результат без выполнения перевода")
+    void executeReplay() {
+        UUID operationId = UUID.randomUUID();
+        AtomicInteger calls = new AtomicInteger();
+
+        idempotencyService.execute(EMAIL, "key-1", request, () -> {
+            calls.incrementAndGet();
+            return new TransferResult(operationId, false);
+        });
+        TransferResult replay = idempotencyService.execute(EMAIL, "key-1", request, () -> {
+            calls.incrementAndGet();
+            return new TransferResult(UUID.randomUUID(), false);
+        });
+
+        assertEquals(new TransferResult(operationId, true), replay);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("Одновременный повтор ждет первый запрос")
+    void executeConcurrentDuplicateWaits() throws Exception {
+        UUID operationId = UUID.randomUUID();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<TransferResult> first = executor.submit(() -> idempotencyService.execute(EMAIL, "key-1", request, () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return new TransferResult(operationId, false);
+            }));
+            started.await();
+
+            Future<TransferResult> second = executor.submit(() -> idempotencyService.execute(EMAIL, "key-1", request, () -> {
+                calls.incrementAndGet();
+                return new TransferResult(UUID.randomUUID(), false);
+            }));
+            Thread.sleep(50);
+            assertFalse(second.isDone());
+
+            release.countDown();
+            assertEquals(new TransferResult(operationId, false), first.get());
+            assertEquals(new TransferResult(operationId, true), second.get());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("Неудачный запрос не запоминается")
+    void executeFailureNotCached() {
+        UUID operationId = UUID.randomUUID();
+
+        assertThrows(CardOperationException.class, () -> idempotencyService.execute(EMAIL, "key-1", request, () -> {
+            throw new CardOperationException("Недостаточно средств");
+        }));
+        TransferResult result = idempotencyService.execute(EMAIL, "key-1", request, () -> new TransferResult(operationId, false));
+
+        assertEquals(new TransferResult(operationId, false), result);
+    }
+
+    @Test
+    @DisplayName("Ключ с другими параметрами перевода отклоняется")
+    void executeMismatch() {
+        idempotencyService.execute(EMAIL, "key-1", request, () -> new TransferResult(UUID.randomUUID(), false));
+
+        CardTransferRequest other = new CardTransferRequest(1L, 2L, BigDecimal.ONE);
+        assertThrows(CardOperationException.class,
+                () -> idempotencyService.execute(EMAIL, "key-1", other, () -> new TransferResult(UUID.randomUUID(), false)));
+    }
+
+    @Test
+    @DisplayName("Пустой ключ отклоняется")
+    void executeBlankKey() {
+        assertThrows(CardOperationException.class,
+                () -> idempotencyService.execute(EMAIL, " ", request, () -> new TransferResult(UUID.randomUUID(), false)));
+    }
+
+    @Test
+    @DisplayName("Новый ключ занимается вставкой в таблицу")
+    void claimNewKey() {
+        when(idempotencyKeyRepository.claim(eq(1L), eq("key-1"), any(), any())).thenReturn(1);
+
+        assertTrue(idempotencyService.claim(1L, "key-1", request).isEmpty());
+        verify(idempotencyKeyRepository, never()).findByUserIdAndKey(any(), any());
+    }
+
+    @Test
+    @DisplayName("Ключ из таблицы возвращает сохраненную операцию")
+    void claimStoredKey() {
+        UUID operationId = UUID.randomUUID();
+        when(idempotencyKeyRepository.claim(eq(1L), eq("key-1"), any(), any())).thenAnswer(inv -> {
+            String hash = inv.getArgument(2);
+            when(idempotencyKeyRepository.findByUserIdAndKey(1L, "key-1")).thenReturn(Optional.of(
+                    IdempotencyKey.builder().userId(1L).key("key-1").requestHash(hash).operationId(operationId).build()));
+            return 0;
+        });
+
+        assertEquals(Optional.of(operationId), idempotencyService.claim(1L, "key-1", request));
+    }
+
+    @Test
+    @DisplayName("Ключ из таблицы с другими параметрами отклоняется")
+    void claimStoredKeyMismatch() {
+        when(idempotencyKeyRepository.claim(eq(1L), eq("key-1"), any(), any())).thenReturn(0);
+        when(idempotencyKeyRepository.findByUserIdAndKey(1L, "key-1")).thenReturn(Optional.of(
+                IdempotencyKey.builder().userId(1L).key("key-1").requestHash("other").operationId(UUID.randomUUID()).build()));
+
+        assertThrows(CardOperationException.class, () -> idempotencyService.claim(1L, "key-1", request));
+    }
+
+    @Test
+    @DisplayName("Ключ из таблицы без операции - запрос еще выполняется")
+    void claimStoredKeyInProgress() {
+        when(idempotencyKeyRepository.claim(eq(1L), eq("key-1"), any(), any())).thenAnswer(inv -> {
+            String hash = inv.getArgument(2);
+            when(idempotencyKeyRepository.findByUserIdAndKey(1L, "key-1")).thenReturn(Optional.of(
+                    IdempotencyKey.builder().userId(1L).key("key-1").requestHash(hash).build()));
+            return 0;
+        });
+
+        CardOperationException ex = assertThrows(CardOperationException.class, () -> idempotencyService.claim(1L, "key-1", request));
+        assertEquals("Запрос с этим Idempotency-Key еще выполняется", ex.getMessage());
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.event.TransferCompletedEvent;
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.response.card.TransactionPageResponse;
+import com.example.bankcards.entity.ledger.EntryType;
+import com.example.bankcards.entity.ledger.LedgerEntry;
+import com.example.bankcards.entity.ledger.LedgerOperation;
+import com.example.bankcards.entity.outbox.OutboxEventType;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerServiceTest {
+
+    @Mock
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private CardBalanceCache cardBalanceCache;
+
+    @InjectMocks
+    private LedgerService ledgerService;
+
+    @Captor
+    private ArgumentCaptor<List<LedgerEntry>> entries;
+
+    @Test
+    @DisplayName("Перевод записывается двумя проводками одной операции")
+    void recordTransfer() {
+        UUID operationId = ledgerService.recordTransfer(1L, 2L, BigDecimal.TEN);
+
+        verify(ledgerEntryRepository).saveAll(entries.capture());
+        LedgerEntry debit = entries.getValue().get(0);
+        LedgerEntry credit = entries.getValue().get(1);
+
+        assertEquals(1L, debit.getCardId());
+        assertEquals(EntryType.DEBIT, debit.getType());
+        assertEquals(2L, credit.getCardId());
+        assertEquals(EntryType.CREDIT, credit.getType());
+        assertEquals(BigDecimal.TEN, debit.getAmount());
+        assertEquals(BigDecimal.TEN, credit.getAmount());
+        assertEquals(operationId, debit.getOperationId());
+        assertEquals(operationId, credit.getOperationId());
+        assertEquals(debit.getCreatedAt(), credit.getCreatedAt());
+        assertEquals(LedgerOperation.TRANSFER, debit.getOperation());
+        verify(outboxService).publish(OutboxEventType.TRANSFER_COMPLETED, new TransferCompletedEvent(operationId, 1L, 2L, BigDecimal.TEN));
+        verify(cardBalanceCache).evictAll(List.of(1L, 2L));
+    }
+
+    @Test
+    @DisplayName("Выпуск карты записывается начислением начального баланса")
+    void recordIssue() {
+        ledgerService.recordIssue(1L, BigDecimal.valueOf(1000));
+
+        verify(ledgerEntryRepository).save(argThat(entry ->
+                entry.getCardId() == 1L
+                        && entry.getType() == EntryType.CREDIT
+                        && entry.getOperation() == LedgerOperation.ISSUE
+                        && BigDecimal.valueOf(1000).equals(entry.getAmount())));
+    }
+
+    @Test
+    @DisplayName("Проводки пакета сохраняются одним вызовом")
+    void recordTransfers() {
+        List<UUID> operationIds = ledgerService.recordTransfers(List.of(
+                new CardTransferRequest(1L, 2L, BigDecimal.TEN),
+                new CardTransferRequest(2L, 3L, BigDecimal.ONE)));
+
+        verify(ledgerEntryRepository).saveAll(entries.capture());
+        assertEquals(2, operationIds.size());
+        assertEquals(4, entries.getValue().size());
+        assertEquals(operationIds.get(1), entries.getValue().get(3).getOperationId());
+        assertEquals(3L, entries.getValue().get(3).getCardId());
+        verify(outboxService).publishAll(OutboxEventType.TRANSFER_COMPLETED, List.of(
+                new TransferCompletedEvent(operationIds.get(0), 1L, 2L, BigDecimal.TEN),
+                new TransferCompletedEvent(operationIds.get(1), 2L, 3L, BigDecimal.ONE)));
+        verify(cardBalanceCache).evictAll(Set.of(1L, 2L, 3L));
+    }
+
+    @Test
+    @DisplayName("История - первая страница и курсор на следующую")
+    void historyFirstPage() {
+        LocalDateTime now = LocalDateTime.of(2025, 1, 1, 12, 0);
+        when(ledgerEntryRepository.findByCardIdOrderByCreatedAtDescIdDesc(1L, Limit.of(3))).thenReturn(List.of(
+                historyEntry(30L, now), historyEntry(20L, now), historyEntry(10L, now.minusMinutes(1))));
+
+        TransactionPageResponse page = ledgerService.history(1L, null, 2);
+
+        assertEquals(2, page.items().size());
+        assertEquals(20L, page.items().get(1).id());
+        assertNotNull(page.nextCursor());
+
+        when(ledgerEntryRepository.findPageBefore(1L, now, 20L, 3)).thenReturn(List.of(historyEntry(10L, now.minusMinutes(1))));
+
+        TransactionPageResponse next = ledgerService.history(1L, page.nextCursor(), 2);
+
+        assertEquals(1, next.items().size());
+        assertNull(next.nextCursor());
+    }
+
+    @Test
+    @DisplayName("История - некорректный курсор")
+    void historyInvalidCursor() {
+        assertThrows(CardOperationException.class, () -> ledgerService.history(1L, "not-a-cursor", 10));
+        verifyNoInteractions(ledgerEntryRepository);
+    }
+
+    private LedgerEntry historyEntry(Long id, LocalDateTime createdAt) {
+        return LedgerEntry.builder()
+                .id(id)
+                .operationId(UUID.randomUUID())
+                .operation(LedgerOperation.TRANSFER)
+                .cardId(1L)
+                .type(EntryType.DEBIT)
+                .amount(BigDecimal.TEN)
+                .createdAt(createdAt)
+                .build();
+    }
+}
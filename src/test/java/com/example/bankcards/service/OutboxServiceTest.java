@@ -0,0 +1,83 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.event.CardCreatedEvent;
+import com.example.bankcards.dto.event.TransferCompletedEvent;
+import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.outbox.OutboxEventType;
+import com.example.bankcards.util.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rows;
+
+    private OutboxService outboxService;
+
+    @BeforeEach
+    void setUp() {
+        outboxService = new OutboxService(jdbcTemplate, new ObjectMapper().findAndRegisterModules());
+    }
+
+    @Test
+    @DisplayName("События пакета вставляются одним JDBC-пакетом")
+    void publishAll() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        outboxService.publishAll(OutboxEventType.TRANSFER_COMPLETED, List.of(
+                new TransferCompletedEvent(first, 1L, 2L, BigDecimal.TEN),
+                new TransferCompletedEvent(second, 3L, 1L, BigDecimal.ONE)));
+
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertEquals(2, rows.getValue().size());
+        Object[] row = rows.getValue().get(1);
+        assertEquals("TRANSFER_COMPLETED", row[0]);
+        assertEquals(3L, row[1]);
+        assertEquals("{\"operationId\":\"" + second + "\",\"fromCardId\":3,\"toCardId\":1,\"amount\":1}", row[2]);
+    }
+
+    @Test
+    @DisplayName("Событие выпуска карты сериализуется с балансом и датой")
+    void publishCardCreated() {
+        outboxService.publish(OutboxEventType.CARD_CREATED, new CardCreatedEvent(
+                5L, 1L, "1234", LocalDate.of(2027, 1, 31), CardStatus.ACTIVE, Money.ofMajor(1000)));
+
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        Object[] row = rows.getValue().get(0);
+        assertEquals(5L, row[1]);
+        String payload = (String) row[2];
+        assertTrue(payload.contains("\"expirationDate\":[2027,1,31]") || payload.contains("\"expirationDate\":\"2027-01-31\""));
+        assertTrue(payload.contains("\"balance\":1000.00"));
+    }
+
+    @Test
+    @DisplayName("Пустой пакет не обращается к базе")
+    void publishEmpty() {
+        outboxService.publishAll(OutboxEventType.TRANSFER_COMPLETED, List.of());
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardNumberHash;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecipientResolverTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    private CardNumberHash cardNumberHash;
+    private RecipientResolver recipientResolver;
+
+    @BeforeEach
+    void setUp() {
+        cardNumberHash = new CardNumberHash("abcdefghijklmnopqrstuvwxyz123456", 0);
+        recipientResolver = new RecipientResolver(cardRepository, cardNumberHash, new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    @DisplayName("Карта ищется по HMAC номера, повторный поиск берется из кэша")
+    void resolveCached() {
+        when(cardRepository.findIdByNumberHash(cardNumberHash.hash("2200001234567890"))).thenReturn(Optional.of(7L));
+
+        assertEquals(7L, recipientResolver.resolve("2200 0012 3456 7890"));
+        assertEquals(7L, recipientResolver.resolve("2200001234567890"));
+
+        verify(cardRepository, times(1)).findIdByNumberHash(any());
+        verify(cardRepository, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("Неизвестный номер - исключение, промах не кэшируется")
+    void resolveNotFound() {
+        when(cardRepository.findIdByNumberHash(any())).thenReturn(Optional.empty(), Optional.of(3L));
+
+        assertThrows(NotFoundException.class, () -> recipientResolver.resolve("2200001234567890"));
+        assertEquals(3L, recipientResolver.resolve("2200001234567890"));
+    }
+}
@@ -1,8 +1,10 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.event.CardStatusChangedEvent;
 import com.example.bankcards.dto.response.block.BlockResponse;
 import com.example.bankcards.entity.card.Card;
 import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.outbox.OutboxEventType;
 import com.example.bankcards.entity.request.RequestBlock;
 import com.example.bankcards.entity.request.RequestStatus;
 import com.example.bankcards.entity.user.User;
@@ -38,6 +40,9 @@ class RequestBlockServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private OutboxService outboxService;
+
     @InjectMocks
     private RequestBlockService requestBlockService;
 
@@ -191,6 +196,20 @@ class RequestBlockServiceTest {
         assertEquals(RequestStatus.COMPLETED, block.getStatus());
         verify(cardRepository).save(card);
         verify(requestBlockRepository).save(block);
+        verify(outboxService).publish(OutboxEventType.CARD_STATUS_CHANGED,
+                new CardStatusChangedEvent(card.getId(), 1L, CardStatus.ACTIVE, CardStatus.BLOCKED));
+    }
+
+    @Test
+    @DisplayName("Выполнить запрос на блокировку - карта уже заблокирована, событие не публикуется")
+    void completeRequestBlockAlreadyBlocked() {
+        card.setStatus(CardStatus.BLOCKED);
+        when(requestBlockRepository.findById(1L)).thenReturn(Optional.of(block));
+
+        requestBlockService.completeRequestBlock(1L);
+
+        assertEquals(RequestStatus.COMPLETED, block.getStatus());
+        verify(outboxService, never()).publish(any(), any());
     }
 
     @Test
@@ -0,0 +1,116 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedTransferPipelineTest {
+
+    private ShardedTransferPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Переводы, накопившиеся во время коммита, фиксируются одной группой")
+    void groupCommit() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        List<Integer> groupSizes = new CopyOnWriteArrayList<>();
+
+        pipeline = pipeline(1, 16, 8, group -> {
+            groupSizes.add(group.size());
+            if (groupSizes.size() == 1) {
+                firstStarted.countDown();
+                await(releaseFirst);
+            }
+            group.forEach(submission -> submission.result().complete(new TransferResult(UUID.randomUUID(), false)));
+        });
+
+        CompletableFuture<TransferResult> first = pipeline.submit(1L, transfer(1L), null);
+        firstStarted.await();
+        List<CompletableFuture<TransferResult>> rest = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rest.add(pipeline.submit(1L, transfer(1L), null));
+        }
+        releaseFirst.countDown();
+
+        first.join();
+        rest.forEach(CompletableFuture::join);
+        assertEquals(List.of(1, 5), groupSizes);
+    }
+
+    @Test
+    @DisplayName("Переводы с одной карты попадают в один шард")
+    void sameCardSameShard() {
+        pipeline = pipeline(8, 16, 8, group -> {});
+
+        assertEquals(pipeline.shard(42L), pipeline.shard(42L));
+        assertTrue(pipeline.shard(42L) >= 0 && pipeline.shard(42L) < 8);
+    }
+
+    @Test
+    @DisplayName("Переполненная очередь отклоняет перевод")
+    void queueFull() {
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline = pipeline(1, 1, 1, group -> {
+            await(release);
+            group.forEach(submission -> submission.result().complete(new TransferResult(UUID.randomUUID(), false)));
+        });
+
+        assertThrows(CannotAcquireLockException.class, () -> {
+            for (int i = 0; i < 3; i++) {
+                pipeline.submit(1L, transfer(1L), null);
+            }
+        });
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("Ошибка группы завершает все переводы группы")
+    void groupFailure() {
+        pipeline = pipeline(1, 16, 8, group -> {
+            throw new IllegalStateException("db down");
+        });
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> pipeline.submit(1L, transfer(1L), null).join());
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+    }
+
+    private ShardedTransferPipeline pipeline(int shards, int queueSize, int groupSize,
+                                             Consumer<List<ShardedTransferPipeline.Submission>> groupCommit) {
+        return new ShardedTransferPipeline(new TransferProperties.Sharding(shards, queueSize, groupSize),
+                groupCommit, new SimpleMeterRegistry());
+    }
+
+    private CardTransferRequest transfer(Long fromCardId) {
+        return new CardTransferRequest(fromCardId, fromCardId + 1, BigDecimal.ONE);
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
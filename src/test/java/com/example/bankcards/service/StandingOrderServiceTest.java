@@ -0,0 +1,236 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.request.card.StandingOrderRequest;
+import com.example.bankcards.dto.response.card.StandingOrderResponse;
+import com.example.bankcards.entity.card.Card;
+import com.example.bankcards.entity.standing.StandingOrder;
+import com.example.bankcards.entity.standing.StandingOrderPeriod;
+import com.example.bankcards.entity.standing.StandingOrderStatus;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.exception.TransferLimitException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.StandingOrderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StandingOrderServiceTest {
+
+    private static final String EMAIL = "dmitrii@gmail.com";
+
+    @Mock
+    private StandingOrderRepository standingOrderRepository;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private TransferService transferService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private StandingOrderService standingOrderService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        standingOrderService = new StandingOrderService(standingOrderRepository, cardRepository, transferService, userService,
+                transactionTemplate, new SimpleMeterRegistry(), Duration.ofMinutes(1), Duration.ofMinutes(1), 3);
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().doCallRealMethod().when(transactionTemplate).executeWithoutResult(any());
+
+        user = User.builder().id(1L).email(EMAIL).build();
+    }
+
+    @Test
+    @DisplayName("Создание регулярного перевода")
+    void create() {
+        LocalDateTime startAt = LocalDateTime.now().plusDays(1);
+        mockCards(user, user);
+        when(standingOrderRepository.save(any(StandingOrder.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        StandingOrderResponse response = standingOrderService.create(EMAIL,
+                new StandingOrderRequest(1L, 2L, BigDecimal.TEN, startAt, StandingOrderPeriod.MONTHLY, null));
+
+        assertEquals(StandingOrderStatus.ACTIVE, response.status());
+        assertEquals(startAt, response.nextRunAt());
+        assertEquals(5, response.priority());
+        verify(transferService).validate(any(CardTransferRequest.class));
+    }
+
+    @Test
+    @DisplayName("Создание - дата начала в прошлом переносится на ближайшее исполнение")
+    void createStartInPast() {
+        LocalDateTime startAt = LocalDateTime.now().minusDays(2).minusHours(1);
+        mockCards(user, user);
+        when(standingOrderRepository.save(any(StandingOrder.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        StandingOrderResponse response = standingOrderService.create(EMAIL,
+                new StandingOrderRequest(1L, 2L, BigDecimal.TEN, startAt, StandingOrderPeriod.DAILY, 1));
+
+        assertEquals(startAt.plusDays(3), response.nextRunAt());
+        verify(standingOrderRepository).save(argThat(order -> order.getRuns() == 3));
+    }
+
+    @Test
+    @DisplayName("Создание - чужая карта получателя")
+    void createNotOwner() {
+        mockCards(user, User.builder().id(2L).build());
+
+        assertThrows(CardOperationException.class, () -> standingOrderService.create(EMAIL,
+                new StandingOrderRequest(1L, 2L, BigDecimal.TEN, LocalDateTime.now(), StandingOrderPeriod.ONCE, null)));
+        verify(standingOrderRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Исполнение - ключ идемпотентности по номеру исполнения, назначено следующее")
+    void executeCompleted() {
+        StandingOrder order = order(StandingOrderPeriod.MONTHLY, LocalDateTime.now().minusMinutes(1), 1);
+        UUID operationId = UUID.randomUUID();
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), eq("standing-order:10:0")))
+                .thenReturn(new TransferResult(operationId, false));
+
+        standingOrderService.execute(order);
+
+        verify(standingOrderRepository).advance(eq(10L), eq(StandingOrderStatus.ACTIVE), eq(StandingOrderStatus.ACTIVE), eq(1),
+                eq(order.getStartAt().plusMonths(1)), eq(operationId), isNull(), any());
+    }
+
+    @Test
+    @DisplayName("Исполнение - разовый перевод завершается")
+    void executeOnceCompleted() {
+        StandingOrder order = order(StandingOrderPeriod.ONCE, LocalDateTime.now().minusMinutes(1), 1);
+        UUID operationId = UUID.randomUUID();
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), any())).thenReturn(new TransferResult(operationId, false));
+
+        standingOrderService.execute(order);
+
+        verify(standingOrderRepository).advance(eq(10L), eq(StandingOrderStatus.ACTIVE), eq(StandingOrderStatus.COMPLETED), eq(1),
+                isNull(), eq(operationId), isNull(), any());
+    }
+
+    @Test
+    @DisplayName("Исполнение - отказ пропускает исполнение и сохраняет причину")
+    void executeRejected() {
+        StandingOrder order = order(StandingOrderPeriod.WEEKLY, LocalDateTime.now().minusMinutes(1), 1);
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), any()))
+                .thenThrow(new CardOperationException("Недостаточно средств"));
+
+        standingOrderService.execute(order);
+
+        verify(standingOrderRepository).advance(eq(10L), eq(StandingOrderStatus.ACTIVE), eq(StandingOrderStatus.ACTIVE), eq(1),
+                eq(order.getStartAt().plusWeeks(1)), isNull(), eq("Недостаточно средств"), any());
+    }
+
+    @Test
+    @DisplayName("Исполнение - превышение лимита откладывает исполнение")
+    void executeLimitPostponed() {
+        StandingOrder order = order(StandingOrderPeriod.DAILY, LocalDateTime.now().minusMinutes(1), 1);
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), any()))
+                .thenThrow(new TransferLimitException("Превышен лимит"));
+
+        standingOrderService.execute(order);
+
+        verify(standingOrderRepository).postponeForLimit(eq(10L), any(), eq("Превышен лимит"));
+        verify(standingOrderRepository, never()).postpone(any(), any(), any());
+        verify(standingOrderRepository, never()).advance(any(), any(), any(), anyInt(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Исполнение - временная ошибка откладывает исполнение")
+    void executeTransientPostponed() {
+        StandingOrder order = order(StandingOrderPeriod.DAILY, LocalDateTime.now().minusMinutes(1), 1);
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), any()))
+                .thenThrow(new PessimisticLockingFailureException("lock timeout"));
+
+        standingOrderService.execute(order);
+
+        verify(standingOrderRepository).postpone(eq(10L), any(), isNull());
+    }
+
+    @Test
+    @DisplayName("Исполнение - попытки исчерпаны, разовый перевод не выполнен")
+    void executeAttemptsExhausted() {
+        StandingOrder order = order(StandingOrderPeriod.ONCE, LocalDateTime.now().minusMinutes(1), 4);
+
+        standingOrderService.execute(order);
+
+        verify(transferService, never()).transfer(anyLong(), any(), any());
+        verify(standingOrderRepository).advance(eq(10L), eq(StandingOrderStatus.ACTIVE), eq(StandingOrderStatus.FAILED), eq(1),
+                isNull(), isNull(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Исполнение - пропущенные за время простоя исполнения не наверстываются")
+    void executeSkipsMissedRuns() {
+        StandingOrder order = order(StandingOrderPeriod.DAILY, LocalDateTime.now().minusDays(3).minusHours(1), 1);
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), any())).thenReturn(new TransferResult(UUID.randomUUID(), false));
+
+        standingOrderService.execute(order);
+
+        verify(standingOrderRepository).advance(eq(10L), any(), eq(StandingOrderStatus.ACTIVE), eq(4),
+                eq(order.getStartAt().plusDays(4)), any(), isNull(), any());
+    }
+
+    @Test
+    @DisplayName("Отмена - перевод уже завершен")
+    void cancelFinished() {
+        when(userService.findByEmail(EMAIL)).thenReturn(user);
+        when(standingOrderRepository.findByIdAndUserId(10L, 1L))
+                .thenReturn(Optional.of(order(StandingOrderPeriod.ONCE, LocalDateTime.now(), 0)));
+        when(standingOrderRepository.cancel(10L, StandingOrderStatus.ACTIVE, StandingOrderStatus.CANCELLED)).thenReturn(0);
+
+        assertThrows(CardOperationException.class, () -> standingOrderService.cancel(EMAIL, 10L));
+    }
+
+    private void mockCards(User fromOwner, User toOwner) {
+        when(userService.findByEmail(EMAIL)).thenReturn(user);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(Card.builder().id(1L).user(fromOwner).build()));
+        lenient().when(cardRepository.findById(2L)).thenReturn(Optional.of(Card.builder().id(2L).user(toOwner).build()));
+    }
+
+    private StandingOrder order(StandingOrderPeriod period, LocalDateTime startAt, int attempts) {
+        return StandingOrder.builder()
+                .id(10L)
+                .userId(1L)
+                .fromCardId(1L)
+                .toCardId(2L)
+                .amount(BigDecimal.TEN)
+                .period(period)
+                .priority(5)
+                .startAt(startAt)
+                .nextRunAt(startAt)
+                .runs(0)
+                .status(StandingOrderStatus.ACTIVE)
+                .attempts(attempts)
+                .createdAt(startAt)
+                .build();
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.response.card.TransferOrderResponse;
+import com.example.bankcards.entity.transfer.TransferOrder;
+import com.example.bankcards.entity.transfer.TransferOrderStatus;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.exception.NotFoundException;
+import com.example.bankcards.repository.TransferOrderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferQueueServiceTest {
+
+    private static final String EMAIL = "dmitrii@gmail.com";
+
+    @Mock
+    private TransferOrderRepository transferOrderRepository;
+
+    @Mock
+    private TransferService transferService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private TransferQueueService transferQueueService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        transferQueueService = new TransferQueueService(transferOrderRepository, transferService, userService, transactionTemplate,
+                new SimpleMeterRegistry(), Duration.ofSeconds(30), Duration.ofSeconds(1), 3, Duration.ofDays(7));
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().doCallRealMethod().when(transactionTemplate).executeWithoutResult(any());
+
+        user = User.builder().id(1L).email(EMAIL).build();
+    }
+
+    @Test
+    @DisplayName("Постановка перевода в очередь")
+    void submit() {
+        CardTransferRequest request = new CardTransferRequest(1L, 2L, BigDecimal.TEN);
+        UUID id = UUID.randomUUID();
+        when(userService.findByEmail(EMAIL)).thenReturn(user);
+        when(transferOrderRepository.save(any(TransferOrder.class))).thenAnswer(inv -> {
+            TransferOrder order = inv.getArgument(0);
+            order.setId(id);
+            return order;
+        });
+
+        TransferOrderResponse response = transferQueueService.submit(EMAIL, request);
+
+        assertEquals(id, response.id());
+        assertEquals(TransferOrderStatus.PENDING, response.status());
+        verify(transferService).validate(request);
+        verify(transferOrderRepository).save(argThat(order -> order.getUserId().equals(1L) && order.getAmount().equals(BigDecimal.TEN)));
+        verify(transferService, never()).transfer(anyLong(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Постановка в очередь - некорректная сумма")
+    void submitInvalid() {
+        CardTransferRequest request = new CardTransferRequest(1L, 1L, BigDecimal.TEN);
+        when(transferService.validate(request)).thenThrow(new CardOperationException("Нельзя переводить на ту же карту"));
+
+        assertThrows(CardOperationException.class, () -> transferQueueService.submit(EMAIL, request));
+        verify(transferOrderRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Обработка - перевод выполнен с ключом идемпотентности по ID")
+    void processCompleted() {
+        TransferOrder order = order(1);
+        UUID operationId = UUID.randomUUID();
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), eq("transfer-order:" + order.getId())))
+                .thenReturn(new TransferResult(operationId, false));
+
+        transferQueueService.process(order);
+
+        verify(transferOrderRepository).updateStatus(eq(order.getId()), eq(TransferOrderStatus.COMPLETED), eq(operationId), isNull(), any());
+    }
+
+    @Test
+    @DisplayName("Обработка - отклоненный перевод сохраняет причину")
+    void processRejected() {
+        TransferOrder order = order(1);
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), any()))
+                .thenThrow(new CardOperationException("Недостаточно средств"));
+
+        transferQueueService.process(order);
+
+        verify(transferOrderRepository).updateStatus(eq(order.getId()), eq(TransferOrderStatus.REJECTED), isNull(), eq("Недостаточно средств"), any());
+    }
+
+    @Test
+    @DisplayName("Обработка - временная ошибка возвращает перевод в очередь")
+    void processReleased() {
+        TransferOrder order = order(1);
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), any()))
+                .thenThrow(new PessimisticLockingFailureException("lock timeout"));
+
+        LocalDateTime before = LocalDateTime.now();
+        transferQueueService.process(order);
+
+        // Перевод возвращается в очередь не раньше чем через retry-delay
+        verify(transferOrderRepository).release(eq(order.getId()), argThat(retryAt -> !retryAt.isBefore(before.plusSeconds(1))), any());
+        verify(transferOrderRepository, never()).updateStatus(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Обработка - попытки исчерпаны")
+    void processAttemptsExhausted() {
+        TransferOrder order = order(4);
+
+        transferQueueService.process(order);
+
+        verify(transferService, never()).transfer(anyLong(), any(), any());
+        verify(transferOrderRepository).updateStatus(eq(order.getId()), eq(TransferOrderStatus.REJECTED), isNull(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Статус - чужой перевод не найден")
+    void findOrderNotOwner() {
+        UUID id = UUID.randomUUID();
+        when(userService.findByEmail(EMAIL)).thenReturn(user);
+        when(transferOrderRepository.findByIdAndUserId(id, 1L)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> transferQueueService.findOrder(EMAIL, id, Duration.ZERO));
+    }
+
+    @Test
+    @DisplayName("Статус - ожидание прерывается завершением перевода")
+    void findOrderWaitsForCompletion() throws Exception {
+        TransferOrder pending = order(1);
+        AtomicReference<TransferOrder> stored = new AtomicReference<>(pending);
+        when(userService.findByEmail(EMAIL)).thenReturn(user);
+        when(transferOrderRepository.findByIdAndUserId(pending.getId(), 1L)).thenAnswer(inv -> Optional.of(stored.get()));
+        when(transferService.transfer(eq(1L), any(CardTransferRequest.class), any())).thenAnswer(inv -> {
+            stored.set(TransferOrder.builder().id(pending.getId()).status(TransferOrderStatus.COMPLETED).build());
+            return new TransferResult(UUID.randomUUID(), false);
+        });
+
+        CompletableFuture<TransferOrderResponse> waiting = CompletableFuture.supplyAsync(
+                () -> transferQueueService.findOrder(EMAIL, pending.getId(), Duration.ofSeconds(10)));
+        Thread.sleep(100);
+        transferQueueService.process(pending);
+
+        assertEquals(TransferOrderStatus.COMPLETED, waiting.get(5, TimeUnit.SECONDS).status());
+    }
+
+    private TransferOrder order(int attempts) {
+        return TransferOrder.builder()
+                .id(UUID.randomUUID())
+                .userId(1L)
+                .fromCardId(1L)
+                .toCardId(2L)
+                .amount(BigDecimal.TEN)
+                .status(TransferOrderStatus.PROCESSING)
+                .attempts(attempts)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+}
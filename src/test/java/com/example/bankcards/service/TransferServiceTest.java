@@ -0,0 +1,613 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.request.card.CardTransferRequest;
+import com.example.bankcards.dto.response.card.BatchTransferItemResponse;
+import com.example.bankcards.entity.card.Card;
+import com.example.bankcards.entity.card.CardStatus;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.CardOperationException;
+import com.example.bankcards.exception.TransferLimitException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.Money;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferServiceTest {
+
+    private static final byte[] ENCRYPTED = {1, 2, 3};
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private VelocityLimiter velocityLimiter;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private MeterRegistry meterRegistry;
+    private TransferService transferService;
+    private User user;
+    private Card card;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        transferService = transferService(TransferMode.PESSIMISTIC);
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().doCallRealMethod().when(transactionTemplate).executeWithoutResult(any());
+
+        user = User.builder()
+                .id(1L)
+                .firstName("Dmitrii")
+                .secondName("Dmitrii")
+                .email("dmitrii@gmail.com")
+                .build();
+
+        card = Card.builder()
+                .id(1L)
+                .user(user)
+                .number(ENCRYPTED)
+                .expirationDate(LocalDate.now().plusYears(1))
+                .status(CardStatus.ACTIVE)
+                .balance(Money.ofMajor(1000))
+                .build();
+    }
+
+    @Test
+    @DisplayName("Перевести деньги")
+    void transferMoneySuccess() {
+        Card toCard = Card.builder()
+                .id(2L)
+                .user(user)
+                .number(ENCRYPTED)
+                .status(CardStatus.ACTIVE)
+                .balance(Money.ofMajor(500))
+                .build();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(toCard));
+
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.valueOf(300));
+
+        transferService.transfer("dmitrii@gmail.com", req);
+
+        assertEquals(Money.ofMajor(700), card.getBalance());
+        assertEquals(Money.ofMajor(800), toCard.getBalance());
+
+        verify(cardRepository).setLockTimeout("2000");
+        verify(cardRepository, times(2)).save(any(Card.class));
+        verify(ledgerService).recordTransfer(1L, 2L, BigDecimal.valueOf(300));
+    }
+
+    @Test
+    @DisplayName("Перевести деньги - владелец по ID для переводов из очереди")
+    void transferMoneyByUserId() {
+        Card toCard = Card.builder()
+                .id(2L)
+                .user(user)
+                .number(ENCRYPTED)
+                .status(CardStatus.ACTIVE)
+                .balance(Money.ofMajor(500))
+                .build();
+
+        when(userService.findUserById(1L)).thenReturn(user);
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(toCard));
+        when(idempotencyService.claim(1L, "order-1", new CardTransferRequest(1L, 2L, BigDecimal.TEN))).thenReturn(Optional.empty());
+
+        transferService.transfer(1L, new CardTransferRequest(1L, 2L, BigDecimal.TEN), "order-1");
+
+        assertEquals(Money.ofMajor(990), card.getBalance());
+        verify(userService, never()).findByEmail(any());
+        verify(idempotencyService).complete(eq(1L), eq("order-1"), any());
+    }
+
+    @Test
+    @DisplayName("Перевод другому клиенту - владелец проверяется только у карты списания")
+    void transferToCustomer() {
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.debit(1L, 1L, BigDecimal.TEN, "ACTIVE")).thenReturn(1);
+        when(cardRepository.creditAny(5L, BigDecimal.TEN, "ACTIVE")).thenReturn(1);
+
+        transferService.transferToCustomer("dmitrii@gmail.com", new CardTransferRequest(1L, 5L, BigDecimal.TEN), null);
+
+        verify(cardRepository).setLockTimeout("2000");
+        verify(cardRepository, never()).credit(any(), any(), any(), any());
+        verify(cardRepository, never()).findByIdForUpdate(any());
+        verify(ledgerService).recordTransfer(1L, 5L, BigDecimal.TEN);
+    }
+
+    @Test
+    @DisplayName("Перевод другому клиенту - карта получателя неактивна")
+    void transferToCustomerInactive() {
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.debit(1L, 1L, BigDecimal.TEN, "ACTIVE")).thenReturn(1);
+        when(cardRepository.creditAny(5L, BigDecimal.TEN, "ACTIVE")).thenReturn(0);
+
+        CardOperationException ex = assertThrows(CardOperationException.class, () -> transferService.transferToCustomer(
+                "dmitrii@gmail.com", new CardTransferRequest(1L, 5L, BigDecimal.TEN), null));
+
+        assertEquals("Карта получателя недоступна для зачисления", ex.getMessage());
+        verify(ledgerService, never()).recordTransfer(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Перевести деньги - карты блокируются по возрастанию ID")
+    void transferMoneyLockOrder() {
+        Card toCard = Card.builder()
+                .id(2L)
+                .user(user)
+                .number(ENCRYPTED)
+                .status(CardStatus.ACTIVE)
+                .balance(Money.ofMajor(500))
+                .build();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(toCard));
+
+        transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(2L, 1L, BigDecimal.valueOf(200)));
+
+        InOrder inOrder = inOrder(cardRepository);
+        inOrder.verify(cardRepository).setLockTimeout("2000");
+        inOrder.verify(cardRepository).findByIdForUpdate(1L);
+        inOrder.verify(cardRepository).findByIdForUpdate(2L);
+        assertEquals(Money.ofMajor(1200), card.getBalance());
+        assertEquals(Money.ofMajor(300), toCard.getBalance());
+        verify(cardRepository, never()).findById(any());
+    }
+
+    @Test
+    @DisplayName("Перевести деньги - на ту же карту")
+    void transferMoneySameCard() {
+        CardOperationException ex = assertThrows(
+                CardOperationException.class,
+                () -> transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 1L, BigDecimal.ONE))
+        );
+        assertTrue(ex.getMessage().contains("Нельзя переводить на ту же карту"));
+        verify(cardRepository, never()).findByIdForUpdate(any());
+    }
+
+    @Test
+    @DisplayName("Перевести деньги - не владелец карты")
+    void transferMoneyFail() {
+        User other = User.builder().id(99L).build();
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(
+                Card.builder().id(2L).user(other).status(CardStatus.ACTIVE).balance(Money.ofMajor(10)).build()
+        ));
+
+        CardOperationException ex = assertThrows(
+                CardOperationException.class,
+                () -> transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, BigDecimal.ONE))
+        );
+        assertTrue(ex.getMessage().contains("Перевод возможен только между вашими картами"));
+    }
+
+    @Test
+    @DisplayName("Перевести деньги - недостаточно средств")
+    void transferMoneyFailAmount() {
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(
+                Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ZERO).build()
+        ));
+
+        CardOperationException ex = assertThrows(
+                CardOperationException.class,
+                () -> transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, BigDecimal.valueOf(2000)))
+        );
+        assertTrue(ex.getMessage().contains("Недостаточно средств"));
+    }
+
+    @Test
+    @DisplayName("Оптимистичный перевод - повтор после конфликта версий")
+    void transferOptimisticRetry() {
+        transferService = transferService(TransferMode.OPTIMISTIC);
+        Card toCard = Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(500)).build();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(toCard));
+        doThrow(new ObjectOptimisticLockingFailureException(Card.class, 1L))
+                .doNothing()
+                .when(cardRepository).flush();
+
+        transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, BigDecimal.valueOf(100)));
+
+        verify(cardRepository, times(2)).saveAll(List.of(card, toCard));
+        verify(cardRepository, never()).findByIdForUpdate(any());
+        verify(ledgerService, times(1)).recordTransfer(1L, 2L, BigDecimal.valueOf(100));
+        assertEquals(1.0, meterRegistry.get("cards.transfer.retries").tag("mode", "optimistic").counter().count());
+        assertEquals(1.0, meterRegistry.get("cards.transfer.results").tag("result", "completed").counter().count());
+    }
+
+    @Test
+    @DisplayName("Оптимистичный перевод - исчерпаны попытки")
+    void transferOptimisticAbort() {
+        transferService = transferService(TransferMode.OPTIMISTIC);
+        Card toCard = Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(500)).build();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(toCard));
+        doThrow(new ObjectOptimisticLockingFailureException(Card.class, 1L)).when(cardRepository).flush();
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, BigDecimal.valueOf(100))));
+
+        verify(cardRepository, times(3)).flush();
+        assertEquals(2.0, meterRegistry.get("cards.transfer.retries").tag("mode", "optimistic").counter().count());
+        assertEquals(1.0, meterRegistry.get("cards.transfer.results").tag("result", "aborted").counter().count());
+    }
+
+    @Test
+    @DisplayName("Отклоненный перевод учитывается в метриках")
+    void transferRejectedMetric() {
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(
+                Card.builder().id(2L).user(user).status(CardStatus.BLOCKED).balance(Money.ZERO).build()
+        ));
+
+        assertThrows(CardOperationException.class,
+                () -> transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, BigDecimal.ONE)));
+
+        assertEquals(1.0, meterRegistry.get("cards.transfer.results").tag("result", "rejected").counter().count());
+    }
+
+    @Test
+    @DisplayName("Атомарный перевод - два условных UPDATE по возрастанию ID")
+    void transferAtomicSuccess() {
+        transferService = transferService(TransferMode.ATOMIC);
+        BigDecimal amount = BigDecimal.valueOf(300);
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.debit(2L, 1L, amount, "ACTIVE")).thenReturn(1);
+        when(cardRepository.credit(1L, 1L, amount, "ACTIVE")).thenReturn(1);
+
+        transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(2L, 1L, amount));
+
+        InOrder inOrder = inOrder(cardRepository);
+        inOrder.verify(cardRepository).setLockTimeout("2000");
+        inOrder.verify(cardRepository).credit(1L, 1L, amount, "ACTIVE");
+        inOrder.verify(cardRepository).debit(2L, 1L, amount, "ACTIVE");
+        verify(cardRepository, never()).findById(any());
+        verify(cardRepository, never()).save(any());
+        verify(ledgerService).recordTransfer(2L, 1L, amount);
+    }
+
+    @Test
+    @DisplayName("Атомарный перевод - недостаточно средств")
+    void transferAtomicInsufficientFunds() {
+        transferService = transferService(TransferMode.ATOMIC);
+        BigDecimal amount = BigDecimal.valueOf(2000);
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.debit(1L, 1L, amount, "ACTIVE")).thenReturn(0);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+
+        CardOperationException ex = assertThrows(
+                CardOperationException.class,
+                () -> transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, amount))
+        );
+        assertTrue(ex.getMessage().contains("Недостаточно средств"));
+        verify(cardRepository, never()).credit(any(), any(), any(), any());
+        verifyNoInteractions(ledgerService);
+    }
+
+    @Test
+    @DisplayName("Атомарный перевод - карта получателя не активна")
+    void transferAtomicInactiveCard() {
+        transferService = transferService(TransferMode.ATOMIC);
+        BigDecimal amount = BigDecimal.TEN;
+        Card blocked = Card.builder().id(2L).user(user).status(CardStatus.BLOCKED).balance(Money.ZERO).build();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.debit(1L, 1L, amount, "ACTIVE")).thenReturn(1);
+        when(cardRepository.credit(2L, 1L, amount, "ACTIVE")).thenReturn(0);
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(blocked));
+
+        CardOperationException ex = assertThrows(
+                CardOperationException.class,
+                () -> transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, amount))
+        );
+        assertTrue(ex.getMessage().contains("только между активными картами"));
+    }
+
+    @Test
+    @DisplayName("Атомарный перевод - чужая карта")
+    void transferAtomicNotOwner() {
+        transferService = transferService(TransferMode.ATOMIC);
+        BigDecimal amount = BigDecimal.TEN;
+        Card other = Card.builder().id(2L).user(User.builder().id(99L).build()).status(CardStatus.ACTIVE).build();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.debit(1L, 1L, amount, "ACTIVE")).thenReturn(1);
+        when(cardRepository.credit(2L, 1L, amount, "ACTIVE")).thenReturn(0);
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(other));
+
+        CardOperationException ex = assertThrows(
+                CardOperationException.class,
+                () -> transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, amount))
+        );
+        assertTrue(ex.getMessage().contains("Перевод возможен только между вашими картами"));
+    }
+
+    @Test
+    @DisplayName("Перевод с Idempotency-Key - ключ занимается до изменения карт")
+    void transferIdempotentClaim() {
+        transferService = transferService(TransferMode.ATOMIC);
+        BigDecimal amount = BigDecimal.TEN;
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, amount);
+        UUID operationId = UUID.randomUUID();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(idempotencyService.claim(1L, "key-1", req)).thenReturn(Optional.empty());
+        when(cardRepository.debit(1L, 1L, amount, "ACTIVE")).thenReturn(1);
+        when(cardRepository.credit(2L, 1L, amount, "ACTIVE")).thenReturn(1);
+        when(ledgerService.recordTransfer(1L, 2L, amount)).thenReturn(operationId);
+
+        TransferResult result = transferService.transfer("dmitrii@gmail.com", req, "key-1");
+
+        assertEquals(new TransferResult(operationId, false), result);
+        InOrder inOrder = inOrder(idempotencyService, cardRepository);
+        inOrder.verify(idempotencyService).claim(1L, "key-1", req);
+        inOrder.verify(cardRepository).debit(1L, 1L, amount, "ACTIVE");
+        verify(idempotencyService).complete(1L, "key-1", operationId);
+    }
+
+    @Test
+    @DisplayName("Перевод с Idempotency-Key - повтор возвращает сохраненный результат без изменения карт")
+    void transferIdempotentReplay() {
+        transferService = transferService(TransferMode.PESSIMISTIC);
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.TEN);
+        UUID operationId = UUID.randomUUID();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(idempotencyService.claim(1L, "key-1", req)).thenReturn(Optional.of(operationId));
+
+        TransferResult result = transferService.transfer("dmitrii@gmail.com", req, "key-1");
+
+        assertEquals(new TransferResult(operationId, true), result);
+        verifyNoInteractions(cardRepository, ledgerService);
+        verify(idempotencyService, never()).complete(any(), any(), any());
+        assertEquals(1.0, meterRegistry.get("cards.transfer.results").tag("result", "replayed").counter().count());
+    }
+
+    @Test
+    @DisplayName("Перевести деньги - превышен лимит, карты не загружаются")
+    void transferLimitExceeded() {
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.TEN);
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(velocityLimiter.acquire(user, 1L, Money.ofMajor(10)))
+                .thenThrow(new TransferLimitException("Превышено число переводов в минуту по карте"));
+
+        assertThrows(TransferLimitException.class, () -> transferService.transfer("dmitrii@gmail.com", req));
+
+        verify(cardRepository, never()).findByIdForUpdate(any());
+        assertEquals(1.0, meterRegistry.get("cards.transfer.results").tag("result", "rejected").counter().count());
+    }
+
+    @Test
+    @DisplayName("Перевести деньги - отклоненный перевод не расходует лимит")
+    void transferRejectedReleasesLimit() {
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.valueOf(5000));
+        Card toCard = Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(500)).build();
+        VelocityLimiter.Reservation reservation = new VelocityLimiter.Reservation(1L, 1L, 500000, 0);
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(velocityLimiter.acquire(user, 1L, Money.ofMajor(5000))).thenReturn(reservation);
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(toCard));
+
+        assertThrows(CardOperationException.class, () -> transferService.transfer("dmitrii@gmail.com", req));
+
+        verify(velocityLimiter).release(reservation);
+    }
+
+    @Test
+    @DisplayName("Пакетный перевод - карты загружаются и блокируются одним запросом")
+    void transferBatchSuccess() {
+        Card toCard = Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(500)).build();
+        List<CardTransferRequest> transfers = List.of(
+                new CardTransferRequest(1L, 2L, BigDecimal.valueOf(300)),
+                new CardTransferRequest(2L, 1L, BigDecimal.valueOf(100)),
+                new CardTransferRequest(1L, 2L, BigDecimal.valueOf(50)));
+        List<UUID> operationIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card, toCard));
+        when(ledgerService.recordTransfers(transfers)).thenReturn(operationIds);
+
+        List<BatchTransferItemResponse> items = transferService.transferBatch("dmitrii@gmail.com", transfers, BatchTransferMode.ALL_OR_NOTHING);
+
+        assertEquals(Money.ofMajor(750), card.getBalance());
+        assertEquals(Money.ofMajor(750), toCard.getBalance());
+        assertEquals(3, items.size());
+        assertTrue(items.stream().allMatch(item -> item.status() == BatchItemStatus.COMPLETED));
+        assertEquals(operationIds.get(2), items.get(2).operationId());
+        verify(cardRepository).findAllByIdForUpdate(argThat(ids -> List.copyOf(ids).equals(List.of(1L, 2L))));
+        verify(cardRepository, never()).findByIdForUpdate(any());
+        // Полосы блокировок в памяти пакетом не занимаются
+        assertEquals(0, meterRegistry.find("cards.transfer.lock.wait").timers().stream().mapToLong(Timer::count).sum());
+    }
+
+    @Test
+    @DisplayName("Пакетный перевод - ALL_OR_NOTHING отменяет пакет при первой ошибке")
+    void transferBatchAllOrNothing() {
+        Card toCard = Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(500)).build();
+        List<CardTransferRequest> transfers = List.of(
+                new CardTransferRequest(1L, 2L, BigDecimal.valueOf(300)),
+                new CardTransferRequest(1L, 2L, BigDecimal.valueOf(5000)));
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card, toCard));
+
+        CardOperationException ex = assertThrows(CardOperationException.class,
+                () -> transferService.transferBatch("dmitrii@gmail.com", transfers, BatchTransferMode.ALL_OR_NOTHING));
+
+        assertEquals("Перевод №2: Недостаточно средств", ex.getMessage());
+        verifyNoInteractions(ledgerService);
+        assertEquals(2.0, meterRegistry.get("cards.transfer.batch.items").tag("result", "rejected").counter().count());
+    }
+
+    @Test
+    @DisplayName("Пакетный перевод - PER_ITEM пропускает отклоненные переводы")
+    void transferBatchPerItem() {
+        Card toCard = Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(500)).build();
+        List<CardTransferRequest> transfers = List.of(
+                new CardTransferRequest(1L, 2L, BigDecimal.valueOf(5000)),
+                new CardTransferRequest(1L, 3L, BigDecimal.valueOf(10)),
+                new CardTransferRequest(1L, 2L, BigDecimal.valueOf(300)));
+        UUID operationId = UUID.randomUUID();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card, toCard));
+        when(ledgerService.recordTransfers(List.of(transfers.get(2)))).thenReturn(List.of(operationId));
+
+        List<BatchTransferItemResponse> items = transferService.transferBatch("dmitrii@gmail.com", transfers, BatchTransferMode.PER_ITEM);
+
+        assertEquals(BatchItemStatus.REJECTED, items.get(0).status());
+        assertEquals("Недостаточно средств", items.get(0).error());
+        assertEquals(BatchItemStatus.REJECTED, items.get(1).status());
+        assertTrue(items.get(1).error().contains("Карта не найдена"));
+        assertEquals(new BatchTransferItemResponse(2, BatchItemStatus.COMPLETED, operationId, null), items.get(2));
+        assertEquals(Money.ofMajor(700), card.getBalance());
+        assertEquals(Money.ofMajor(800), toCard.getBalance());
+    }
+
+    @Test
+    @DisplayName("Шардированный перевод - результат после группового коммита")
+    void transferShardedSuccess() {
+        transferService = transferService(TransferMode.SHARDED);
+        Card toCard = Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(500)).build();
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.valueOf(300));
+        UUID operationId = UUID.randomUUID();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card, toCard));
+        when(ledgerService.recordTransfers(List.of(req))).thenReturn(List.of(operationId));
+
+        try {
+            assertEquals(operationId, transferService.transfer("dmitrii@gmail.com", req));
+        } finally {
+            transferService.shutdown();
+        }
+
+        assertEquals(Money.ofMajor(700), card.getBalance());
+        assertEquals(Money.ofMajor(800), toCard.getBalance());
+        verify(cardRepository, never()).debit(any(), any(), any(), any());
+        assertEquals(1.0, meterRegistry.get("cards.transfer.results").tag("mode", "sharded").tag("result", "completed").counter().count());
+    }
+
+    @Test
+    @DisplayName("Шардированный перевод - отказ возвращается вызывающему")
+    void transferShardedRejected() {
+        transferService = transferService(TransferMode.SHARDED);
+        Card toCard = Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(500)).build();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card, toCard));
+        when(ledgerService.recordTransfers(List.of())).thenReturn(List.of());
+
+        try {
+            CardOperationException ex = assertThrows(CardOperationException.class,
+                    () -> transferService.transfer("dmitrii@gmail.com", new CardTransferRequest(1L, 2L, BigDecimal.valueOf(5000))));
+            assertEquals("Недостаточно средств", ex.getMessage());
+        } finally {
+            transferService.shutdown();
+        }
+        assertEquals(Money.ofMajor(1000), card.getBalance());
+    }
+
+    @Test
+    @DisplayName("Шардированный перевод - повтор по Idempotency-Key не изменяет карты")
+    void transferShardedReplay() {
+        transferService = transferService(TransferMode.SHARDED);
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.TEN);
+        UUID operationId = UUID.randomUUID();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(idempotencyService.claim(1L, "key-1", req)).thenReturn(Optional.of(operationId));
+        when(ledgerService.recordTransfers(List.of())).thenReturn(List.of());
+
+        try {
+            assertEquals(new TransferResult(operationId, true), transferService.transfer("dmitrii@gmail.com", req, "key-1"));
+        } finally {
+            transferService.shutdown();
+        }
+        verify(idempotencyService, never()).complete(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Шардированный перевод - ключ отклоненного перевода освобождается, повтор выполняется заново")
+    void transferShardedRejectedReleasesKey() {
+        transferService = transferService(TransferMode.SHARDED);
+        Card toCard = Card.builder().id(2L).user(user).status(CardStatus.ACTIVE).balance(Money.ofMajor(500)).build();
+        CardTransferRequest req = new CardTransferRequest(1L, 2L, BigDecimal.valueOf(1500));
+        UUID operationId = UUID.randomUUID();
+
+        when(userService.findByEmail("dmitrii@gmail.com")).thenReturn(user);
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card, toCard));
+        when(idempotencyService.claim(1L, "key-1", req)).thenReturn(Optional.empty());
+        when(ledgerService.recordTransfers(List.of())).thenReturn(List.of());
+        when(ledgerService.recordTransfers(List.of(req))).thenReturn(List.of(operationId));
+
+        try {
+            assertThrows(CardOperationException.class, () -> transferService.transfer("dmitrii@gmail.com", req, "key-1"));
+            verify(idempotencyService).release(1L, "key-1");
+            verify(idempotencyService, never()).complete(any(), any(), any());
+
+            card.setBalance(Money.ofMajor(2000));
+            assertEquals(new TransferResult(operationId, false), transferService.transfer("dmitrii@gmail.com", req, "key-1"));
+        } finally {
+            transferService.shutdown();
+        }
+        verify(idempotencyService).complete(1L, "key-1", operationId);
+        assertEquals(Money.ofMajor(500), card.getBalance());
+    }
+
+    private TransferService transferService(TransferMode mode) {
+        TransferProperties properties = new TransferProperties(mode, Duration.ofSeconds(2), 3, Duration.ofMillis(1), Duration.ofMillis(2),
+                new TransferProperties.Sharding(2, 16, 8));
+        return new TransferService(cardRepository, userService, ledgerService, idempotencyService,
+                new CardLockManager(meterRegistry, true, 4, Duration.ofSeconds(1)), velocityLimiter, transactionTemplate, properties, meterRegistry);
+    }
+}
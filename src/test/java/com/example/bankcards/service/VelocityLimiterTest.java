@@ -0,0 +1,182 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.user.Role;
+import com.example.bankcards.entity.user.User;
+import com.example.bankcards.exception.TransferLimitException;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.util.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VelocityLimiterTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T12:00:00Z");
+
+    @Mock
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    private MutableClock clock;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(START);
+        user = User.builder().id(1L).role(Role.USER).build();
+    }
+
+    @Test
+    @DisplayName("Число переводов в минуту по карте, окно сдвигается со временем")
+    void countPerMinute() {
+        VelocityLimiter limiter = limiter(new VelocityLimitProperties.Limit(null, null, 2), limit(), 100);
+
+        limiter.acquire(user, 1L, Money.ofMajor(1));
+        limiter.acquire(user, 1L, Money.ofMajor(1));
+        assertThrows(TransferLimitException.class, () -> limiter.acquire(user, 1L, Money.ofMajor(1)));
+        limiter.acquire(user, 2L, Money.ofMajor(1));
+
+        clock.advance(Duration.ofSeconds(70));
+        assertNotNull(limiter.acquire(user, 1L, Money.ofMajor(1)));
+    }
+
+    @Test
+    @DisplayName("Сумма за час по пользователю складывается по всем его картам")
+    void userAmountPerHour() {
+        VelocityLimiter limiter = limiter(limit(), new VelocityLimitProperties.Limit(new BigDecimal("100"), null, null), 100);
+
+        limiter.acquire(user, 1L, Money.ofMajor(60));
+        TransferLimitException ex = assertThrows(TransferLimitException.class,
+                () -> limiter.acquire(user, 2L, Money.ofMajor(50)));
+        assertEquals("Превышен лимит суммы переводов за час пользователя", ex.getMessage());
+
+        limiter.acquire(user, 2L, Money.ofMajor(40));
+        clock.advance(Duration.ofMinutes(65));
+        limiter.acquire(user, 2L, Money.ofMajor(100));
+    }
+
+    @Test
+    @DisplayName("Отмененный перевод возвращает лимит")
+    void release() {
+        VelocityLimiter limiter = limiter(new VelocityLimitProperties.Limit(null, new BigDecimal("100"), null), limit(), 100);
+
+        VelocityLimiter.Reservation reservation = limiter.acquire(user, 1L, Money.ofMajor(100));
+        assertThrows(TransferLimitException.class, () -> limiter.acquire(user, 1L, Money.ofMinor(1)));
+
+        limiter.release(reservation);
+        limiter.acquire(user, 1L, Money.ofMajor(100));
+    }
+
+    @Test
+    @DisplayName("Роль без лимитов не учитывается")
+    void roleWithoutLimits() {
+        VelocityLimiter limiter = limiter(new VelocityLimitProperties.Limit(null, null, 1), limit(), 100);
+        User admin = User.builder().id(2L).role(Role.ADMIN).build();
+
+        assertNull(limiter.acquire(admin, 1L, Money.ofMajor(1)));
+        assertNull(limiter.acquire(admin, 1L, Money.ofMajor(1)));
+    }
+
+    @Test
+    @DisplayName("Счетчики восстанавливаются из журнала за сутки")
+    void rebuild() {
+        VelocityLimiter limiter = limiter(new VelocityLimitProperties.Limit(null, new BigDecimal("1000"), null), limit(), 100);
+        long recent = LocalDateTime.now(clock).minusHours(2).toEpochSecond(ZoneOffset.UTC) / 300;
+        long old = LocalDateTime.now(clock).minusHours(30).toEpochSecond(ZoneOffset.UTC) / 300;
+        when(ledgerEntryRepository.findVelocitySince(any(), eq(300L))).thenReturn(List.of(
+                bucket(1L, recent, new BigDecimal("950.00"), 3),
+                bucket(1L, old, new BigDecimal("500.00"), 1)));
+
+        limiter.rebuild();
+
+        limiter.acquire(user, 1L, Money.ofMajor(50));
+        assertThrows(TransferLimitException.class, () -> limiter.acquire(user, 1L, Money.ofMinor(1)));
+        verify(ledgerEntryRepository, never()).findVelocityByCard(anyLong(), any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Вытесненная карта восстанавливается из журнала, размер ограничен")
+    void evictedCardReloaded() {
+        VelocityLimiter limiter = limiter(new VelocityLimitProperties.Limit(null, new BigDecimal("100"), null), limit(), 1);
+        long now = LocalDateTime.now(clock).toEpochSecond(ZoneOffset.UTC) / 300;
+        lenient().when(ledgerEntryRepository.findVelocityByCard(anyLong(), any(), anyLong())).thenReturn(List.of());
+        // Политика Caffeine может оставить карту 1 и отвергнуть новые: лимит должен держаться в обоих случаях
+        lenient().when(ledgerEntryRepository.findVelocityByCard(eq(1L), any(), eq(300L)))
+                .thenReturn(List.of(bucket(1L, now, new BigDecimal("100.00"), 1)));
+        lenient().when(ledgerEntryRepository.findVelocityByUser(anyLong(), any(), anyLong())).thenReturn(List.of());
+
+        for (long cardId = 1; cardId <= 50; cardId++) {
+            limiter.acquire(user, cardId, Money.ofMajor(100));
+        }
+
+        assertThrows(TransferLimitException.class, () -> limiter.acquire(user, 1L, Money.ofMinor(1)));
+    }
+
+    private VelocityLimiter limiter(VelocityLimitProperties.Limit card, VelocityLimitProperties.Limit owner, int maxTracked) {
+        VelocityLimitProperties properties = new VelocityLimitProperties(true, maxTracked, maxTracked,
+                Map.of(Role.USER, new VelocityLimitProperties.Limits(card, owner)));
+        return new VelocityLimiter(ledgerEntryRepository, properties, new SimpleMeterRegistry(), clock);
+    }
+
+    private VelocityLimitProperties.Limit limit() {
+        return new VelocityLimitProperties.Limit(null, null, null);
+    }
+
+    private LedgerEntryRepository.VelocityBucket bucket(Long cardId, long bucket, BigDecimal amount, long transfers) {
+        return new LedgerEntryRepository.VelocityBucket() {
+            public Long getCardId() { return cardId; }
+            public Long getUserId() { return 1L; }
+            public Long getBucket() { return bucket; }
+            public BigDecimal getAmount() { return amount; }
+            public Long getTransfers() { return transfers; }
+        };
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
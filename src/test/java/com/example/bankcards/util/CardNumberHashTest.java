@@ -0,0 +1,29 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardNumberHashTest {
+
+    private final CardNumberHash cardNumberHash = new CardNumberHash("abcdefghijklmnopqrstuvwxyz123456", 2);
+
+    @Test
+    @DisplayName("Хэш детерминирован и не зависит от пробелов")
+    void hashDeterministic() {
+        String hash = cardNumberHash.hash("1234123412341234");
+
+        assertEquals(64, hash.length());
+        assertEquals(hash, cardNumberHash.hash("1234 1234 1234 1234"));
+        assertNotEquals(hash, cardNumberHash.hash("1234123412341235"));
+    }
+
+    @Test
+    @DisplayName("Хэш зависит от ключа")
+    void hashDependsOnKey() {
+        CardNumberHash other = new CardNumberHash("654321zyxwvutsrqponmlkjihgfedcba", 2);
+
+        assertNotEquals(cardNumberHash.hash("1234123412341234"), other.hash("1234123412341234"));
+    }
+}
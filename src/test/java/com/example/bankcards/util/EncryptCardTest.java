@@ -0,0 +1,116 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.EncryptException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptCardTest {
+
+    private static final String OLD_KEY = "12345678901234567890123456789012";
+    private static final String NEW_KEY = "abcdefghijklmnopqrstuvwxyz123456";
+
+    private final EncryptCard encryptCard = new EncryptCard(new CardKeyRing(Map.of(0, OLD_KEY, 1, NEW_KEY), 1), 2);
+
+    @Test
+    @DisplayName("Шифрование и дешифрование")
+    void encryptDecryptSuccess() {
+        byte[] encrypted = encryptCard.encrypt("1234123412341234");
+
+        assertEquals(1 + 12 + 16 + 16, encrypted.length);
+        assertFalse(Arrays.equals(encrypted, encryptCard.encrypt("1234123412341234")));
+        assertEquals("1234123412341234", encryptCard.decrypt(encrypted));
+    }
+
+    @Test
+    @DisplayName("Дешифрование - неверный шифротекст")
+    void decryptFail() {
+        byte[] encrypted = encryptCard.encrypt("1234123412341234");
+        encrypted[encrypted.length - 1] ^= 1;
+
+        assertThrows(EncryptException.class, () -> encryptCard.decrypt(encrypted));
+        assertThrows(EncryptException.class, () -> encryptCard.decrypt(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    @DisplayName("Пакетное шифрование и дешифрование")
+    void encryptAllDecryptAllSuccess() {
+        List<String> numbers = List.of("1111222233334444", "5555666677778888", "9999000011112222");
+
+        List<String> decrypted = encryptCard.decryptAll(encryptCard.encryptAll(numbers));
+
+        assertEquals(numbers, decrypted);
+    }
+
+    @Test
+    @DisplayName("Пакетное дешифрование - битая запись")
+    void decryptAllPartialFail() {
+        byte[] encrypted = encryptCard.encrypt("1111222233334444");
+
+        List<String> decrypted = encryptCard.decryptAll(List.of(encrypted, new byte[]{1, 2, 3}, encrypted));
+
+        assertEquals(Arrays.asList("1111222233334444", null, "1111222233334444"), decrypted);
+    }
+
+    @Test
+    @DisplayName("Шифротекст помечается активной версией ключа")
+    void encryptWithActiveVersion() {
+        byte[] encrypted = encryptCard.encrypt("1234123412341234");
+
+        assertEquals(1, encrypted[0]);
+        assertEquals(1, encryptCard.keyVersion(encrypted));
+    }
+
+    @Test
+    @DisplayName("Дешифрование шифротекста старой версии")
+    void decryptPreviousVersion() {
+        EncryptCard legacy = new EncryptCard(new CardKeyRing(Map.of(0, OLD_KEY), 0), 2);
+        byte[] encrypted = legacy.encrypt("1234123412341234");
+
+        assertEquals(0, encryptCard.keyVersion(encrypted));
+        assertEquals("1234123412341234", encryptCard.decrypt(encrypted));
+    }
+
+    @Test
+    @DisplayName("Перешифрование на активный ключ")
+    void reencryptSuccess() {
+        EncryptCard legacy = new EncryptCard(new CardKeyRing(Map.of(0, OLD_KEY), 0), 2);
+
+        byte[] reencrypted = encryptCard.reencrypt(legacy.encrypt("1234123412341234"));
+
+        assertEquals(1, encryptCard.keyVersion(reencrypted));
+        assertEquals("1234123412341234", encryptCard.decrypt(reencrypted));
+        assertThrows(EncryptException.class, () -> legacy.decrypt(reencrypted));
+    }
+
+    @Test
+    @DisplayName("Шифрование ключом пользователя")
+    void encryptWithDataKey() {
+        SecretKey dataKey = encryptCard.generateDataKey();
+
+        byte[] encrypted = encryptCard.encrypt("1234123412341234", dataKey);
+
+        assertTrue(encryptCard.isDataKeyEncrypted(encrypted));
+        assertEquals("1234123412341234", encryptCard.decrypt(encrypted, dataKey));
+        assertThrows(EncryptException.class, () -> encryptCard.decrypt(encrypted));
+        assertThrows(EncryptException.class, () -> encryptCard.decrypt(encrypted, encryptCard.generateDataKey()));
+    }
+
+    @Test
+    @DisplayName("Шифрование ключа пользователя мастер-ключом")
+    void wrapUnwrapKey() {
+        SecretKey dataKey = encryptCard.generateDataKey();
+
+        byte[] wrapped = encryptCard.wrapKey(dataKey);
+
+        assertEquals(1, encryptCard.keyVersion(wrapped));
+        assertArrayEquals(dataKey.getEncoded(), encryptCard.unwrapKey(wrapped).getEncoded());
+        assertArrayEquals(dataKey.getEncoded(), encryptCard.unwrapKey(encryptCard.reencrypt(wrapped)).getEncoded());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.CardOperationException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    @DisplayName("Сумма из BigDecimal хранится в копейках")
+    void ofBigDecimal() {
+        assertEquals(1234, Money.of(new BigDecimal("12.34")).minor());
+        assertEquals(1200, Money.of(new BigDecimal("12")).minor());
+        assertEquals(new BigDecimal("12.34"), Money.ofMinor(1234).toBigDecimal());
+    }
+
+    @Test
+    @DisplayName("Больше двух знаков после запятой - исключение")
+    void ofTooManyDecimals() {
+        assertThrows(CardOperationException.class, () -> Money.of(new BigDecimal("0.001")));
+    }
+
+    @Test
+    @DisplayName("Переполнение при сложении и вычитании - исключение")
+    void overflow() {
+        Money max = Money.ofMinor(Long.MAX_VALUE);
+        Money min = Money.ofMinor(Long.MIN_VALUE);
+
+        assertThrows(CardOperationException.class, () -> max.plus(Money.ofMinor(1)));
+        assertThrows(CardOperationException.class, () -> min.minus(Money.ofMinor(1)));
+        assertThrows(CardOperationException.class, () -> Money.ofMajor(Long.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("Сложение, вычитание и сравнение")
+    void arithmetic() {
+        Money balance = Money.ofMajor(10);
+        Money amount = Money.ofMinor(1050);
+
+        assertTrue(balance.isLessThan(amount));
+        assertEquals(Money.ofMinor(-50), balance.minus(amount));
+        assertEquals(Money.ofMinor(2050), balance.plus(amount));
+        assertEquals(-1, balance.minus(amount).signum());
+    }
+
+    @Test
+    @DisplayName("Строковое представление с двумя знаками после запятой")
+    void toStringScale() {
+        assertEquals("1000.00", Money.ofMajor(1000).toString());
+        assertEquals("0.05", Money.ofMinor(5).toString());
+        assertEquals("-0.05", Money.ofMinor(-5).toString());
+        assertEquals("-12.30", Money.ofMinor(-1230).toString());
+    }
+
+    @Test
+    @DisplayName("JSON: число с двумя знаками и обратное чтение")
+    void json() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+
+        assertEquals("12.30", mapper.writeValueAsString(Money.ofMinor(1230)));
+        assertEquals(Money.ofMinor(1230), mapper.readValue("12.3", Money.class));
+    }
+
+    @Test
+    @DisplayName("Конвертер JPA сохраняет сумму без потерь")
+    void converterRoundTrip() {
+        MoneyConverter converter = new MoneyConverter();
+        Money money = Money.ofMinor(-98765);
+
+        assertEquals(new BigDecimal("-987.65"), converter.convertToDatabaseColumn(money));
+        assertEquals(money, converter.convertToEntityAttribute(converter.convertToDatabaseColumn(money)));
+        assertNull(converter.convertToDatabaseColumn(null));
+    }
+}
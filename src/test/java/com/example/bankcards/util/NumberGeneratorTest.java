@@ -0,0 +1,44 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberGeneratorTest {
+
+    @Test
+    @DisplayName("Сгенерированный номер проходит проверку Луна")
+    void generateNumberLuhnValid() {
+        for (int i = 0; i < 1000; i++) {
+            String number = NumberGenerator.generateNumber();
+
+            assertEquals(NumberGenerator.LENGTH, number.length());
+            assertTrue(NumberGenerator.isValid(number), number);
+        }
+    }
+
+    @Test
+    @DisplayName("Номер начинается с указанного BIN")
+    void generateNumberWithBin() {
+        String number = NumberGenerator.generateNumber("220012");
+
+        assertTrue(number.startsWith("220012"));
+        assertTrue(NumberGenerator.isValid(number));
+    }
+
+    @Test
+    @DisplayName("Проверка Луна")
+    void isValid() {
+        assertTrue(NumberGenerator.isValid("4111111111111111"));
+        assertFalse(NumberGenerator.isValid("4111111111111112"));
+        assertFalse(NumberGenerator.isValid("4111 1111 1111 1111"));
+        assertFalse(NumberGenerator.isValid("411111111111111"));
+    }
+
+    @Test
+    @DisplayName("BIN длиннее номера")
+    void generateNumberBinTooLong() {
+        assertThrows(IllegalArgumentException.class, () -> NumberGenerator.generateNumber("1234567890123456"));
+    }
+}